@@ -0,0 +1,153 @@
+package com.proxi.whistle.bench;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtDouble;
+import net.minecraft.nbt.NbtFloat;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic generator of realistic horse NBT for benchmarks. Shapes follow what
+ * AbstractHorseEntity.saveNbt produces in 1.21.4: position/motion/rotation lists, attribute
+ * modifiers, an empty brain, owner, saddle/armor stacks and, for donkeys and mules, a chest
+ * inventory. No game bootstrap needed.
+ */
+public final class SyntheticHorses {
+    private SyntheticHorses() {}
+
+    public static final Identifier[] DIMENSIONS = {
+            Identifier.of("minecraft", "overworld"),
+            Identifier.of("minecraft", "the_nether"),
+            Identifier.of("minecraft", "the_end")
+    };
+
+    private static final String[] TYPES = { "minecraft:horse", "minecraft:donkey", "minecraft:mule", "minecraft:skeleton_horse" };
+    private static final String[] ARMOR = { "minecraft:iron_horse_armor", "minecraft:golden_horse_armor", "minecraft:diamond_horse_armor" };
+    private static final String[] CARGO = { "minecraft:wheat", "minecraft:hay_block", "minecraft:golden_carrot", "minecraft:oak_log", "minecraft:cobblestone" };
+
+    public static UUID uuid(Random random) {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+
+    /** A handful of owners shared by many horses, like a real server. */
+    public static UUID[] owners(Random random, int count) {
+        UUID[] owners = new UUID[Math.max(1, count)];
+        for (int i = 0; i < owners.length; i++) owners[i] = uuid(random);
+        return owners;
+    }
+
+    public static BlockPos pos(Random random) {
+        return new BlockPos(random.nextInt(60_000) - 30_000, 60 + random.nextInt(40), random.nextInt(60_000) - 30_000);
+    }
+
+    public static NbtCompound horse(Random random, UUID uuid, UUID owner, BlockPos pos) {
+        String type = TYPES[random.nextInt(TYPES.length)];
+        NbtCompound nbt = new NbtCompound();
+        nbt.putString("id", type);
+        nbt.put("Pos", doubles(pos.getX() + random.nextDouble(), pos.getY(), pos.getZ() + random.nextDouble()));
+        nbt.put("Motion", doubles(0.0, -0.0784000015258789, 0.0));
+        nbt.put("Rotation", floats(random.nextFloat() * 360f, 0f));
+        nbt.putFloat("FallDistance", 0f);
+        nbt.putShort("Fire", (short) -20);
+        nbt.putShort("Air", (short) 300);
+        nbt.putBoolean("OnGround", true);
+        nbt.putBoolean("Invulnerable", false);
+        nbt.putInt("PortalCooldown", 0);
+        nbt.putUuid("UUID", uuid);
+        nbt.putFloat("Health", 15f + random.nextInt(16));
+        nbt.putShort("HurtTime", (short) 0);
+        nbt.putInt("HurtByTimestamp", 0);
+        nbt.putShort("DeathTime", (short) 0);
+        nbt.putFloat("AbsorptionAmount", 0f);
+        nbt.put("attributes", attributes(random));
+        nbt.putBoolean("FallFlying", false);
+        nbt.put("Brain", brain());
+        nbt.putBoolean("CanPickUpLoot", false);
+        nbt.putBoolean("PersistenceRequired", false);
+        nbt.putBoolean("LeftHanded", false);
+        nbt.putInt("Age", 0);
+        nbt.putInt("ForcedAge", 0);
+        nbt.putInt("InLove", 0);
+        nbt.putBoolean("EatingHaystack", false);
+        nbt.putBoolean("Bred", random.nextBoolean());
+        nbt.putInt("Temper", random.nextInt(100));
+        nbt.putBoolean("Tame", true);
+        if (owner != null) nbt.putUuid("Owner", owner);
+        nbt.put("SaddleItem", stack("minecraft:saddle", 1));
+        if (type.equals("minecraft:horse")) {
+            nbt.putInt("Variant", random.nextInt(1031));
+            if (random.nextInt(3) > 0) nbt.put("ArmorItem", stack(ARMOR[random.nextInt(ARMOR.length)], 1));
+        }
+        if (!type.equals("minecraft:horse") && !type.equals("minecraft:skeleton_horse") && random.nextBoolean()) {
+            nbt.putBoolean("ChestedHorse", true);
+            NbtList items = new NbtList();
+            int slots = 5 + random.nextInt(10);
+            for (int i = 0; i < slots; i++) {
+                NbtCompound item = stack(CARGO[random.nextInt(CARGO.length)], 1 + random.nextInt(64));
+                item.putByte("Slot", (byte) (i + 1));
+                items.add(item);
+            }
+            nbt.put("Items", items);
+        }
+        return nbt;
+    }
+
+    /** A later capture of the same horse: moved a bit, some fields changed. */
+    public static NbtCompound moved(Random random, NbtCompound previous) {
+        NbtCompound nbt = previous.copy();
+        NbtList pos = previous.getList("Pos", NbtDouble.DOUBLE_TYPE);
+        nbt.put("Pos", doubles(pos.getDouble(0) + random.nextGaussian(), pos.getDouble(1), pos.getDouble(2) + random.nextGaussian()));
+        nbt.put("Motion", doubles(random.nextGaussian() * 0.1, -0.0784000015258789, random.nextGaussian() * 0.1));
+        nbt.put("Rotation", floats(random.nextFloat() * 360f, 0f));
+        nbt.putFloat("Health", Math.max(1f, previous.getFloat("Health") - random.nextInt(2)));
+        return nbt;
+    }
+
+    private static NbtList attributes(Random random) {
+        NbtList list = new NbtList();
+        list.add(attribute("minecraft:max_health", 15.0 + random.nextInt(16)));
+        list.add(attribute("minecraft:movement_speed", 0.1125 + random.nextDouble() * 0.225));
+        list.add(attribute("minecraft:jump_strength", 0.4 + random.nextDouble() * 0.6));
+        list.add(attribute("minecraft:step_height", 1.0));
+        list.add(attribute("minecraft:safe_fall_distance", 6.0));
+        list.add(attribute("minecraft:fall_damage_multiplier", 0.5));
+        list.add(attribute("minecraft:follow_range", 16.0));
+        return list;
+    }
+
+    private static NbtCompound attribute(String id, double base) {
+        NbtCompound a = new NbtCompound();
+        a.putString("id", id);
+        a.putDouble("base", base);
+        return a;
+    }
+
+    private static NbtCompound brain() {
+        NbtCompound brain = new NbtCompound();
+        brain.put("memories", new NbtCompound());
+        return brain;
+    }
+
+    private static NbtCompound stack(String id, int count) {
+        NbtCompound s = new NbtCompound();
+        s.putString("id", id);
+        s.putInt("count", count);
+        return s;
+    }
+
+    private static NbtList doubles(double... values) {
+        NbtList list = new NbtList();
+        for (double v : values) list.add(NbtDouble.of(v));
+        return list;
+    }
+
+    private static NbtList floats(float... values) {
+        NbtList list = new NbtList();
+        for (float v : values) list.add(NbtFloat.of(v));
+        return list;
+    }
+}
@@ -0,0 +1,139 @@
+package com.proxi.whistle.component;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import com.proxi.whistle.bench.SyntheticHorses;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.codec.PacketCodecs;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BoundHorseDataCodecBenchmark
+ *
+ * The whistle component through its disk codec (NbtOps, as in player and chunk data) and
+ * its packet codec, binary UUID vs. the string form it used to have. The legacy codecs are
+ * rebuilt here as they were. Run with {@code ./gradlew jmh -Pjmh.includes=BoundHorseDataCodec}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BoundHorseDataCodecBenchmark {
+    private static final Codec<BoundHorseData> LEGACY_CODEC = RecordCodecBuilder.create(instance ->
+        instance.group(
+            Codec.STRING.xmap(UUID::fromString, UUID::toString).fieldOf("uuid").forGetter(BoundHorseData::uuid),
+            Identifier.CODEC.fieldOf("dimension").forGetter(BoundHorseData::dimension),
+            BlockPos.CODEC.fieldOf("pos").forGetter(BoundHorseData::pos)
+        ).apply(instance, BoundHorseData::new)
+    );
+
+    private static final PacketCodec<ByteBuf, BoundHorseData> LEGACY_PACKET_CODEC = PacketCodec.tuple(
+        PacketCodecs.STRING.xmap(UUID::fromString, UUID::toString),
+        BoundHorseData::uuid,
+        Identifier.PACKET_CODEC,
+        BoundHorseData::dimension,
+        BlockPos.PACKET_CODEC,
+        BoundHorseData::pos,
+        BoundHorseData::new
+    );
+
+    BoundHorseData data;
+    NbtElement legacyNbt;
+    NbtElement binaryNbt;
+    ByteBuf buf;
+    int legacyPacketEnd;
+    int binaryPacketEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(0x5EEDL);
+        data = new BoundHorseData(SyntheticHorses.uuid(random), SyntheticHorses.DIMENSIONS[0], SyntheticHorses.pos(random));
+        legacyNbt = LEGACY_CODEC.encodeStart(NbtOps.INSTANCE, data).getOrThrow();
+        binaryNbt = BoundHorseData.CODEC.encodeStart(NbtOps.INSTANCE, data).getOrThrow();
+        buf = Unpooled.buffer(256);
+        // legacy bytes at [0, legacyPacketEnd), binary right after
+        LEGACY_PACKET_CODEC.encode(buf, data);
+        legacyPacketEnd = buf.writerIndex();
+        BoundHorseData.PACKET_CODEC.encode(buf, data);
+        binaryPacketEnd = buf.writerIndex();
+        System.out.printf("%nwire bytes: legacy %d, binary %d%n", legacyPacketEnd, binaryPacketEnd - legacyPacketEnd);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buf.release();
+    }
+
+    // ---------- disk (NbtOps) ----------
+
+    @Benchmark
+    public NbtElement nbtEncodeLegacy() {
+        return LEGACY_CODEC.encodeStart(NbtOps.INSTANCE, data).getOrThrow();
+    }
+
+    @Benchmark
+    public NbtElement nbtEncodeBinary() {
+        return BoundHorseData.CODEC.encodeStart(NbtOps.INSTANCE, data).getOrThrow();
+    }
+
+    @Benchmark
+    public BoundHorseData nbtDecodeLegacy() {
+        return LEGACY_CODEC.parse(NbtOps.INSTANCE, legacyNbt).getOrThrow();
+    }
+
+    @Benchmark
+    public BoundHorseData nbtDecodeBinary() {
+        return BoundHorseData.CODEC.parse(NbtOps.INSTANCE, binaryNbt).getOrThrow();
+    }
+
+    /** Old whistles in existing worlds: string form through the new codec. */
+    @Benchmark
+    public BoundHorseData nbtDecodeMigrating() {
+        return BoundHorseData.CODEC.parse(NbtOps.INSTANCE, legacyNbt).getOrThrow();
+    }
+
+    // ---------- wire ----------
+
+    @Benchmark
+    public int packetEncodeLegacy() {
+        buf.writerIndex(binaryPacketEnd);
+        LEGACY_PACKET_CODEC.encode(buf, data);
+        return buf.writerIndex();
+    }
+
+    @Benchmark
+    public int packetEncodeBinary() {
+        buf.writerIndex(binaryPacketEnd);
+        BoundHorseData.PACKET_CODEC.encode(buf, data);
+        return buf.writerIndex();
+    }
+
+    @Benchmark
+    public BoundHorseData packetDecodeLegacy() {
+        buf.readerIndex(0);
+        return LEGACY_PACKET_CODEC.decode(buf);
+    }
+
+    @Benchmark
+    public BoundHorseData packetDecodeBinary() {
+        buf.readerIndex(legacyPacketEnd);
+        return BoundHorseData.PACKET_CODEC.decode(buf);
+    }
+}
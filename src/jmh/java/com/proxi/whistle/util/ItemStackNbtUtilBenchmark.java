@@ -0,0 +1,141 @@
+package com.proxi.whistle.util;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.nbt.NbtCompound;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ItemStackNbtUtilBenchmark
+ *
+ * Stack NBT reads and writes through ItemStackNbtUtil against the per-call reflective path it
+ * replaced (kept below as {@link Reflective}, as it was). On current mappings the reflective
+ * path finds no method at all and pays a failed getMethod lookup per call, which is exactly
+ * what whistle-holding inventories paid per slot. Needs the vanilla registries, so setup
+ * bootstraps them. Run with {@code ./gradlew jmh -Pjmh.includes=ItemStackNbtUtil}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ItemStackNbtUtilBenchmark {
+    ItemStack bound;
+    ItemStack empty;
+    NbtCompound root;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+        System.out.printf("%naccessor: %s%n", ItemStackNbtUtil.STRATEGY);
+        root = new NbtCompound();
+        NbtCompound bh = new NbtCompound();
+        bh.putUuid("uuid", UUID.randomUUID());
+        bh.putString("dimension", "minecraft:overworld");
+        bh.putInt("x", 120);
+        bh.putInt("y", 64);
+        bh.putInt("z", -340);
+        root.put("WhistleBoundHorse", bh);
+        bound = new ItemStack(Items.STICK);
+        ItemStackNbtUtil.setNbt(bound, root);
+        empty = new ItemStack(Items.STICK);
+    }
+
+    @Benchmark
+    public NbtCompound getNbtReflective() {
+        return Reflective.getNbt(bound);
+    }
+
+    @Benchmark
+    public NbtCompound getNbt() {
+        return ItemStackNbtUtil.getNbt(bound);
+    }
+
+    /** The common case for the join handler and the tooltip: a stack without any. */
+    @Benchmark
+    public NbtCompound getNbtMissReflective() {
+        return Reflective.getNbt(empty);
+    }
+
+    @Benchmark
+    public NbtCompound getNbtMiss() {
+        return ItemStackNbtUtil.getNbt(empty);
+    }
+
+    @Benchmark
+    public ItemStack setNbtReflective() {
+        Reflective.setNbt(bound, root);
+        return bound;
+    }
+
+    @Benchmark
+    public ItemStack setNbt() {
+        ItemStackNbtUtil.setNbt(bound, root);
+        return bound;
+    }
+
+    /**
+     * The previous implementation's per-call paths.
+     */
+    static final class Reflective {
+        private static Method getter = null;
+        private static Method setter = null;
+
+        static {
+            for (String name : new String[] { "getNbt", "getTag", "getOrCreateNbt", "getOrCreateTag" }) {
+                try {
+                    getter = ItemStack.class.getMethod(name);
+                    break;
+                } catch (NoSuchMethodException ignored) {}
+            }
+            for (String name : new String[] { "setNbt", "setTag" }) {
+                try {
+                    setter = ItemStack.class.getMethod(name, NbtCompound.class);
+                    break;
+                } catch (NoSuchMethodException ignored) {}
+            }
+        }
+
+        static NbtCompound getNbt(ItemStack stack) {
+            if (stack == null) return null;
+            try {
+                if (getter != null) {
+                    Object res = getter.invoke(stack);
+                    if (res instanceof NbtCompound nc) return nc;
+                }
+            } catch (Throwable ignored) {}
+            try {
+                Method m = ItemStack.class.getMethod("getTag");
+                Object res = m.invoke(stack);
+                if (res instanceof NbtCompound nc) return nc;
+            } catch (Throwable ignored) {}
+            return null;
+        }
+
+        static void setNbt(ItemStack stack, NbtCompound nbt) {
+            if (stack == null) return;
+            try {
+                if (setter != null) {
+                    setter.invoke(stack, nbt);
+                    return;
+                }
+            } catch (Throwable ignored) {}
+            try {
+                Method setTag = ItemStack.class.getMethod("setTag", NbtCompound.class);
+                setTag.invoke(stack, nbt);
+            } catch (Throwable ignored) {}
+        }
+    }
+}
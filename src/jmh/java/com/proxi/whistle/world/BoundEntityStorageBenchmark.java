@@ -0,0 +1,220 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.bench.SyntheticHorses;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * BoundEntityStorageBenchmark
+ *
+ * Headless benchmarks for the bound-entity store over synthetic horse NBT (see
+ * {@link SyntheticHorses}); no server or world is started. Run with {@code ./gradlew jmh},
+ * narrow with e.g. {@code -Pjmh.includes=exportToNbt}.
+ *
+ * The store is a static singleton, so every trial starts by resetting it through
+ * importFromNbt. Only the flush benchmarks enable persistence, against a temp directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BoundEntityStorageBenchmark {
+    private static final long SEED = 0x5EEDL;
+    // a server has far fewer owners than horses
+    private static final int HORSES_PER_OWNER = 20;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int entries;
+
+    UUID[] ids;
+    UUID[] owners;
+    UUID[] strangers;
+    NbtCompound[] nbts;
+    NbtCompound[] updates;
+    Identifier[] dims;
+    BlockPos[] positions;
+    NbtCompound exported;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        owners = SyntheticHorses.owners(random, entries / HORSES_PER_OWNER);
+        ids = new UUID[entries];
+        nbts = new NbtCompound[entries];
+        updates = new NbtCompound[entries];
+        dims = new Identifier[entries];
+        positions = new BlockPos[entries];
+        for (int i = 0; i < entries; i++) {
+            ids[i] = SyntheticHorses.uuid(random);
+            positions[i] = SyntheticHorses.pos(random);
+            dims[i] = SyntheticHorses.DIMENSIONS[random.nextInt(10) < 8 ? 0 : 1 + random.nextInt(2)];
+            nbts[i] = SyntheticHorses.horse(random, ids[i], owners[random.nextInt(owners.length)], positions[i]);
+            updates[i] = SyntheticHorses.moved(random, nbts[i]);
+        }
+        strangers = new UUID[1024];
+        for (int i = 0; i < strangers.length; i++) strangers[i] = SyntheticHorses.uuid(random);
+        populate();
+        exported = BoundEntityStorage.exportToNbt();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BoundEntityStorage.importFromNbt(new NbtCompound());
+    }
+
+    void populate() {
+        BoundEntityStorage.importFromNbt(new NbtCompound());
+        for (int i = 0; i < entries; i++) {
+            BoundEntityStorage.storeSnapshot(ids[i], nbts[i], dims[i], positions[i]);
+        }
+    }
+
+    // ---------- serialization ----------
+
+    @Benchmark
+    public NbtCompound exportToNbt() {
+        return BoundEntityStorage.exportToNbt();
+    }
+
+    @Benchmark
+    public void importFromNbt() {
+        BoundEntityStorage.importFromNbt(exported);
+    }
+
+    // ---------- lookups ----------
+
+    /**
+     * What ENTITY_LOAD and the tooltip ask for every entity / whistle; mostly misses on a
+     * real server, so half the probes are for horses the store does not know.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean lookup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        UUID id = random.nextBoolean() ? ids[random.nextInt(entries)] : strangers[random.nextInt(strangers.length)];
+        return BoundEntityStorage.isBound(id) && !BoundEntityStorage.isDead(id);
+    }
+
+    // ---------- mutations ----------
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void storeSnapshot() {
+        int i = ThreadLocalRandom.current().nextInt(entries);
+        BoundEntityStorage.storeSnapshot(ids[i], nbts[i], dims[i], positions[i]);
+    }
+
+    /**
+     * What updateSnapshotFromEntity does after entity.saveNbt; alternates between two
+     * captures so every call produces a real delta.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void updateSnapshot() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(entries);
+        BoundEntityStorage.updateSnapshot(ids[i], random.nextBoolean() ? updates[i] : nbts[i], dims[i], positions[i]);
+    }
+
+    // ---------- contention: tooltip / sync readers vs. server-thread writer ----------
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(3)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void contentionRead(Blackhole bh) {
+        int i = ThreadLocalRandom.current().nextInt(entries);
+        bh.consume(BoundEntityStorage.getLatestData(ids[i]));
+        bh.consume(BoundEntityStorage.getSnapshotNbt(ids[i]));
+    }
+
+    @Benchmark
+    @Group("contention")
+    @GroupThreads(1)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void contentionWrite() {
+        int i = ThreadLocalRandom.current().nextInt(entries);
+        BoundEntityStorage.updateSnapshot(ids[i], updates[i], dims[i], positions[i]);
+    }
+
+    // ---------- disk ----------
+
+    /**
+     * Persistence enabled against a temp directory, populated and flushed once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Disk {
+        Path dataDir;
+
+        @Setup(Level.Trial)
+        public void open(BoundEntityStorageBenchmark bench) throws IOException {
+            dataDir = Files.createTempDirectory("whistle-jmh");
+            BoundEntityStorage.initPersistence(dataDir);
+            bench.populate();
+            BoundEntityStorage.flushToDisk();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            BoundEntityStorage.shutdownPersistence();
+            BoundEntityStorage.importFromNbt(new NbtCompound());
+            if (dataDir == null) return;
+            try (Stream<Path> files = Files.walk(dataDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Steady-state flush: about 1% of the horses changed since the last one.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void flushToDisk(Disk disk) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int changed = Math.max(1, entries / 100);
+        for (int n = 0; n < changed; n++) {
+            int i = random.nextInt(entries);
+            BoundEntityStorage.updateSnapshot(ids[i], random.nextBoolean() ? updates[i] : nbts[i], dims[i], positions[i]);
+        }
+        BoundEntityStorage.flushToDisk();
+    }
+
+    /**
+     * Full round trip: final flush, reopen the store from disk and bring every owner's
+     * shard back in as if they all joined.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int flushRoundTrip(Disk disk) {
+        BoundEntityStorage.shutdownPersistence();
+        BoundEntityStorage.initPersistence(disk.dataDir);
+        for (UUID owner : owners) BoundEntityStorage.onPlayerJoin(owner);
+        return BoundEntityStorage.exportToNbt().getList("entries", NbtElement.COMPOUND_TYPE).size();
+    }
+}
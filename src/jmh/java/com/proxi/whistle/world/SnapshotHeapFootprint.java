@@ -0,0 +1,97 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.bench.SyntheticHorses;
+import com.proxi.whistle.config.WhistleConfig;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.BlockPos;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * SnapshotHeapFootprint
+ *
+ * Retained heap per bound horse, comparing the old representation (one live NbtCompound
+ * tree per horse) with the encoded one, raw and deflated. Not a JMH benchmark: it fills a
+ * population, forces GC and reads used heap. Run with {@code ./gradlew snapshotFootprint}
+ * (best with a fixed heap, e.g. -Xms4g -Xmx4g, so the numbers are not GC noise). The
+ * store columns include the map entry and locator of each horse, the tree column does not,
+ * so the ratios understate the saving slightly. The last block prints the largest population
+ * as totals and ratios, ready to quote in a commit message or review.
+ */
+public final class SnapshotHeapFootprint {
+    private static final int[] SIZES = { 1_000, 10_000, 100_000 };
+
+    public static void main(String[] args) {
+        System.out.printf("%-10s %14s %14s %14s%n", "entries", "tree B/entry", "raw B/entry", "deflate B/entry");
+        long[] last = new long[3];
+        for (int n : SIZES) {
+            Random random = new Random(n);
+            UUID[] owners = SyntheticHorses.owners(random, n / 20);
+            UUID[] ids = new UUID[n];
+            NbtCompound[] trees = new NbtCompound[n];
+            BlockPos[] positions = new BlockPos[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = SyntheticHorses.uuid(random);
+                positions[i] = SyntheticHorses.pos(random);
+                trees[i] = SyntheticHorses.horse(random, ids[i], owners[random.nextInt(owners.length)], positions[i]);
+            }
+
+            // before: the trees themselves, as the store used to retain them
+            long base = usedAfterGc();
+            NbtCompound[] retained = new NbtCompound[n];
+            for (int i = 0; i < n; i++) retained[i] = trees[i].copy();
+            long tree = usedAfterGc() - base;
+            retained = null;
+
+            WhistleConfig.snapshotCompress = false;
+            long raw = storeFootprint(ids, trees, positions);
+            WhistleConfig.snapshotCompress = true;
+            long deflated = storeFootprint(ids, trees, positions);
+
+            System.out.printf("%-10d %14d %14d %14d%n", n, tree / n, raw / n, deflated / n);
+            last[0] = tree;
+            last[1] = raw;
+            last[2] = deflated;
+        }
+
+        int n = SIZES[SIZES.length - 1];
+        System.out.printf("%n%d horses: tree %.1f MiB, raw %.1f MiB (%.2fx smaller), deflate %.1f MiB (%.2fx smaller)%n",
+                n, mib(last[0]), mib(last[1]), ratio(last[0], last[1]), mib(last[2]), ratio(last[0], last[2]));
+    }
+
+    private static double mib(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static double ratio(long before, long after) {
+        return after > 0 ? (double) before / after : Double.NaN;
+    }
+
+    private static long storeFootprint(UUID[] ids, NbtCompound[] trees, BlockPos[] positions) {
+        BoundEntityStorage.importFromNbt(new NbtCompound());
+        DecodedSnapshotCache.clear();
+        long base = usedAfterGc();
+        for (int i = 0; i < ids.length; i++) {
+            BoundEntityStorage.storeSnapshot(ids[i], trees[i], SyntheticHorses.DIMENSIONS[0], positions[i]);
+        }
+        long used = usedAfterGc() - base;
+        BoundEntityStorage.importFromNbt(new NbtCompound());
+        return used;
+    }
+
+    private static long usedAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -1,82 +1,81 @@
 package com.proxi.whistle;
 
+import com.proxi.whistle.client.ClientWhistleIndex;
+import com.proxi.whistle.client.SyncSubscriptions;
+import com.proxi.whistle.component.BoundHorseData;
+import com.proxi.whistle.component.ModDataComponents;
+import com.proxi.whistle.item.WhistleItem;
+import com.proxi.whistle.network.HorseSyncBatchPayload;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import net.minecraft.client.MinecraftClient;
-import net.minecraft.network.PacketByteBuf;
-import net.minecraft.util.Identifier;
+import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.item.ItemStack;
-import com.proxi.whistle.item.WhistleItem;
+import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
-import com.proxi.whistle.mixin.WhistleItemInvoker;
-import com.proxi.whistle.network.HorseSyncPayload;
-import com.proxi.whistle.network.HorseSyncPayload;
 
 import java.util.UUID;
 
 public class WhistleClient implements ClientModInitializer {
     @Override
     public void onInitializeClient() {
-        // Register the handler for the HorseSyncPayload type
-		ClientPlayNetworking.registerGlobalReceiver(com.proxi.whistle.network.HorseSyncPayload.ID, (payload, context) -> {
+        // Register the handler for the HorseSyncBatchPayload type
+		ClientPlayNetworking.registerGlobalReceiver(HorseSyncBatchPayload.ID, (payload, context) -> {
 			MinecraftClient client = context.client();
 			client.execute(() -> {
-				try {
-					UUID payloadUuid = payload.uuid();
-					net.minecraft.util.Identifier dim = payload.dimension();
-					net.minecraft.util.math.BlockPos pos = payload.pos();
-
-					System.out.println("[Whistle] Client received sync for uuid " + payloadUuid);
-
-					if (client.player == null) {
-						System.out.println("[Whistle] no client.player present");
-						return;
+				if (client.player == null) return;
+				PlayerInventory inv = client.player.getInventory();
+				for (HorseSyncBatchPayload.Entry entry : payload.entries()) {
+					try {
+						applySync(inv, entry.uuid(), entry.dimension(), entry.pos());
+					} catch (Throwable t) {
+						WhistleMod.LOGGER.warn("[Whistle] failed to apply sync for {}", entry.uuid(), t);
 					}
+				}
+			});
+		});
 
-					boolean foundAny = false;
-
-					for (int i = 0; i < client.player.getInventory().size(); i++) {
-						ItemStack stack = client.player.getInventory().getStack(i);
-						if (stack == null || stack.isEmpty()) continue;
-						if (!(stack.getItem() instanceof com.proxi.whistle.item.WhistleItem)) continue;
-
-						boolean matches = false;
-						com.proxi.whistle.component.BoundHorseData comp = stack.get(com.proxi.whistle.component.ModDataComponents.BOUND_HORSE_DATA);
-						if (comp != null && payloadUuid.equals(comp.uuid())) {
-							matches = true;
-						} else {
-							net.minecraft.nbt.NbtCompound root = com.proxi.whistle.util.ItemStackNbtUtil.getNbt(stack);
-							if (root != null && root.contains("WhistleBoundHorse") && root.get("WhistleBoundHorse") instanceof net.minecraft.nbt.NbtCompound) {
-								net.minecraft.nbt.NbtCompound bh = root.getCompound("WhistleBoundHorse");
-								UUID maybe = com.proxi.whistle.item.WhistleItem.readBoundUuid(bh);
-								if (maybe != null && maybe.equals(payloadUuid)) matches = true;
-							}
-						}
-
-						if (matches) {
-							foundAny = true;
-							System.out.println("[Whistle] updating client stack in slot " + i + " for uuid " + payloadUuid);
-
-							// 1) Update client-visible NBT (existing)
-							com.proxi.whistle.mixin.WhistleItemInvoker.invokeWriteBindingNbt(stack, payloadUuid, dim, pos);
+		// Tell the server which horses are on screen so it only syncs those
+		ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> SyncSubscriptions.reset());
+		ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> ClientWhistleIndex.clear());
+		ClientTickEvents.END_CLIENT_TICK.register(SyncSubscriptions::tick);
+    }
 
-							// 2) ALSO update the client-side component so appendTooltip() prefers fresh data
-							//    (use fully-qualified names to avoid import issues)
-							stack.set(com.proxi.whistle.component.ModDataComponents.BOUND_HORSE_DATA,
-									  new com.proxi.whistle.component.BoundHorseData(payloadUuid, dim, pos));
+    /**
+     * Update the whistles bound to this horse, found through the slot index; a stale index
+     * is rebuilt once.
+     */
+    private static void applySync(PlayerInventory inv, UUID uuid, Identifier dim, BlockPos pos) {
+        if (applyToIndexed(inv, uuid, dim, pos)) return;
+        ClientWhistleIndex.rebuild(inv);
+        if (!applyToIndexed(inv, uuid, dim, pos)) {
+            WhistleMod.LOGGER.debug("[Whistle] received sync for {} but found no matching whistle", uuid);
+        }
+    }
 
-							// 3) Write back into the inventory so Minecraft re-renders the slot/tooltip
-							client.player.getInventory().setStack(i, stack);
-						}
-					}
+    /**
+     * False when the index turned out stale for this horse (no slots, or a slot no longer
+     * holding its whistle).
+     */
+    private static boolean applyToIndexed(PlayerInventory inv, UUID uuid, Identifier dim, BlockPos pos) {
+        int[] slots = ClientWhistleIndex.slots(inv, uuid);
+        if (slots.length == 0) return false;
+        boolean fresh = true;
+        for (int slot : slots) {
+            ItemStack stack = inv.getStack(slot);
+            if (!(stack.getItem() instanceof WhistleItem) || !uuid.equals(WhistleItem.getBoundUuid(stack))) {
+                fresh = false;
+                continue;
+            }
+            BoundHorseData current = stack.get(ModDataComponents.BOUND_HORSE_DATA);
+            if (current != null && dim.equals(current.dimension()) && pos.equals(current.pos())) continue;
 
-					if (!foundAny) {
-						System.out.println("[Whistle] received sync for uuid " + payloadUuid + " but found no matching whistle in inventory");
-					}
-				} catch (Throwable t) {
-					System.out.println("[Whistle] client handler threw: " + t);
-				}
-			});
-		});
+            // the component is what appendTooltip() reads; slots are drawn from the live stack
+            stack.set(ModDataComponents.BOUND_HORSE_DATA, new BoundHorseData(uuid, dim, pos));
+            WhistleMod.LOGGER.debug("[Whistle] updated whistle in slot {} for {}", slot, uuid);
+        }
+        return fresh;
     }
 }
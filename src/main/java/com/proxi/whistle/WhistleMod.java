@@ -2,13 +2,22 @@ package com.proxi.whistle;
 
 import com.proxi.whistle.component.ModDataComponents;
 import com.proxi.whistle.component.BoundHorseData;
+import com.proxi.whistle.command.WhistleCommand;
+import com.proxi.whistle.config.WhistleConfig;
+import com.proxi.whistle.metrics.WhistleMetrics;
+import com.proxi.whistle.item.PendingSummons;
 import com.proxi.whistle.item.WhistleItem;
 import com.proxi.whistle.util.ItemStackNbtUtil;
 import com.proxi.whistle.world.BoundEntityStorage;
+import com.proxi.whistle.world.HorseSyncBatcher;
+import com.proxi.whistle.world.WhistleHolderIndex;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.player.UseEntityCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
 import net.fabricmc.fabric.api.entity.event.v1.ServerLivingEntityEvents;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.entity.event.v1.ServerEntityWorldChangeEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.itemgroup.v1.ItemGroupEvents;
@@ -46,7 +55,9 @@ import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.network.codec.PacketCodecs;
 import net.minecraft.network.PacketByteBuf;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
-import com.proxi.whistle.network.HorseSyncPayload;
+import com.proxi.whistle.network.HorseSubscribePayload;
+import com.proxi.whistle.network.HorseSyncBatchPayload;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 
 public class WhistleMod implements ModInitializer {
     public static final String MOD_ID = "whistle";
@@ -55,21 +66,39 @@ public class WhistleMod implements ModInitializer {
     public static final RegistryKey<Item> WHISTLE_KEY = RegistryKey.of(RegistryKeys.ITEM, Identifier.of(MOD_ID, "whistle"));
     public static Item WHISTLE;
 	
-	public static final Identifier HORSE_SYNC_PACKET = Identifier.of(MOD_ID, "horse_sync");
+	public static final Identifier HORSE_SYNC_PACKET = Identifier.of(MOD_ID, "horse_sync_batch");
+	public static final Identifier HORSE_SUBSCRIBE_PACKET = Identifier.of(MOD_ID, "horse_subscribe");
 
     @Override
     public void onInitialize() {
+        // Read server tuning before anything that depends on it
+        WhistleConfig.load();
+
         // Initialize custom data components first
         ModDataComponents.initialize();
+        // resolve the stack NBT accessor now rather than on first use
+        ItemStackNbtUtil.init();
 
         // Initialize BoundEntityStorage
         BoundEntityStorage.init();
+        PendingSummons.init();
+
+        // Metrics: /whistle stats for operators, JMX for monitoring
+        WhistleMetrics.registerJmx();
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> WhistleCommand.register(dispatcher));
 		
 		// Register networking payload
 		PayloadTypeRegistry.playS2C().register(
-			com.proxi.whistle.network.HorseSyncPayload.ID,
-			com.proxi.whistle.network.HorseSyncPayload.CODEC
+			HorseSyncBatchPayload.ID,
+			HorseSyncBatchPayload.CODEC
+		);
+		PayloadTypeRegistry.playC2S().register(
+			HorseSubscribePayload.ID,
+			HorseSubscribePayload.CODEC
 		);
+		// clients say which horses they show and how fresh; runs on the server thread
+		ServerPlayNetworking.registerGlobalReceiver(HorseSubscribePayload.ID, (payload, context) ->
+			HorseSyncBatcher.subscribe(context.player(), payload.subscriptions()));
 		
         // load persisted state from world save on server start
         ServerLifecycleEvents.SERVER_STARTED.register((MinecraftServer server) -> {
@@ -81,10 +110,13 @@ public class WhistleMod implements ModInitializer {
             }
         });
 
-        // flush state to disk on server stopping (ensures last-minute writes)
+        // stop the background writer and flush synchronously on server stopping (ensures last-minute writes)
         ServerLifecycleEvents.SERVER_STOPPING.register((MinecraftServer server) -> {
             try {
-                BoundEntityStorage.flushToDisk();
+                WhistleHolderIndex.clear();
+                HorseSyncBatcher.clear();
+                PendingSummons.clear();
+                BoundEntityStorage.shutdownPersistence();
                 LOGGER.info("Whistle: BoundEntityStorage flushed to disk");
             } catch (Throwable t) {
                 LOGGER.warn("Whistle: Failed to flush BoundEntityStorage to disk", t);
@@ -146,18 +178,6 @@ public class WhistleMod implements ModInitializer {
                 BoundEntityStorage.updateSnapshotFromEntity(entity);
                 BoundEntityStorage.storeSnapshot(uuid, BoundEntityStorage.getSnapshotNbt(uuid) != null ? BoundEntityStorage.getSnapshotNbt(uuid) : new NbtCompound(), dimensionId, pos);
 
-                // Also write a small client-visible NBT block on the ItemStack so the tooltip updates immediately
-                NbtCompound root = ItemStackNbtUtil.getOrCreateNbt(stack);
-                NbtCompound bh = new NbtCompound();
-                bh.putUuid("uuid", uuid);
-                bh.putString("dimension", dimensionId.toString());
-                bh.putInt("x", pos.getX());
-                bh.putInt("y", pos.getY());
-                bh.putInt("z", pos.getZ());
-                root.put("WhistleBoundHorse", bh);
-                // Make sure the stack actually stores it (some mappings need explicit setter)
-                ItemStackNbtUtil.setNbt(stack, root);
-
                 player.sendMessage(Text.translatable("item.whistle.whistle.bound"), true);
                 world.playSound(null, player.getBlockPos(), SoundEvents.ITEM_TRIDENT_RETURN, SoundCategory.PLAYERS, 1.0f, 1.0f);
 
@@ -182,6 +202,13 @@ public class WhistleMod implements ModInitializer {
             BoundEntityStorage.onEntityLoad(entity, world);
         });
 
+        // Dimension change: update the stored location right away
+        ServerEntityWorldChangeEvents.AFTER_ENTITY_CHANGE_WORLD.register((originalEntity, newEntity, origin, destination) -> {
+            if (newEntity instanceof AbstractHorseEntity) {
+                BoundEntityStorage.onEntityChangedWorld(newEntity, destination);
+            }
+        });
+
         // Death event for living entities
         ServerLivingEntityEvents.AFTER_DEATH.register((livingEntity, damageSource) -> {
             if (livingEntity instanceof AbstractHorseEntity) {
@@ -193,11 +220,13 @@ public class WhistleMod implements ModInitializer {
         ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
             ServerPlayerEntity player = handler.player;
             if (player == null) return;
+            WhistleHolderIndex.untrack(player.getUuid());
+            HorseSyncBatcher.forget(player.getUuid());
             Entity vehicle = player.getVehicle();
             if (vehicle instanceof AbstractHorseEntity horse) {
                 UUID horseId = horse.getUuid();
                 if (BoundEntityStorage.isBound(horseId)) {
-                    BoundEntityStorage.markWithOfflinePlayer(horseId, player.getName().getString());
+                    BoundEntityStorage.markWithOfflinePlayer(horseId, player.getUuid(), player.getName().getString());
                 }
             }
         });
@@ -207,46 +236,44 @@ public class WhistleMod implements ModInitializer {
 			ServerPlayerEntity player = handler.player;
 			if (player == null) return;
 			String name = player.getName().getString();
-			BoundEntityStorage.clearOfflineForPlayerName(name);
-
-			// also clear client-side offlinePlayer NBT on whistles so the tooltip clears immediately
-			for (ServerPlayerEntity p : server.getPlayerManager().getPlayerList()) {
-				for (int i = 0; i < p.getInventory().size(); i++) {
-					ItemStack s = p.getInventory().getStack(i);
-					if (s == null || s.isEmpty()) continue;
-					if (!(s.getItem() instanceof WhistleItem)) continue;
-
-					NbtCompound root = ItemStackNbtUtil.getNbt(s);
-					if (root == null) continue;
-					NbtCompound bound = root.contains("WhistleBoundHorse") && root.get("WhistleBoundHorse") instanceof NbtCompound
-							? root.getCompound("WhistleBoundHorse")
-							: (root.contains("BoundEntity") && root.get("BoundEntity") instanceof NbtCompound ? root.getCompound("BoundEntity") : null);
-					if (bound == null) continue;
-
-					// if this whistle referenced the returning player, remove offlinePlayer
-					if (bound.contains("offlinePlayer") && name.equals(bound.getString("offlinePlayer"))) {
-						NbtCompound bh = bound.copy();
-						bh.remove("offlinePlayer");
-						root.put("WhistleBoundHorse", bh);
-						ItemStackNbtUtil.setNbt(s, root);
-						p.getInventory().setStack(i, s);
-						try {
-							p.networkHandler.sendPacket(p.getInventory().createSlotSetPacket(i));
-						} catch (Throwable ignored) {}
-					}
-				}
-			}
+			// bring the player's horse shard into memory before anything asks for it
+			BoundEntityStorage.onPlayerJoin(player.getUuid());
+			// index the whistles this player carries for the sync path
+			WhistleHolderIndex.track(player);
+			// only this player's markers; the tooltip reads them from storage, stacks carry none
+			BoundEntityStorage.clearOfflineForPlayer(server, player.getUuid(), name);
 		});
 
-        // Server tick: once per second refresh loaded entity snapshots
+        // Respawn creates a new player entity (and inventory handler): re-index it
+        ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> {
+            WhistleHolderIndex.untrack(oldPlayer.getUuid());
+            WhistleHolderIndex.track(newPlayer);
+        });
+
+        // World tick: slow consistency sweep over that dimension's snapshots, spread over ticks within a time budget
+        ServerTickEvents.END_WORLD_TICK.register(world -> {
+            try {
+                BoundEntityStorage.tickWorld(world);
+            } catch (Throwable t) {
+                LOGGER.warn("BoundEntityStorage world tick failed: ", t);
+            }
+        });
+
+        // Server tick: idle shard unloading, pending summons, sync batches
         ServerTickEvents.END_SERVER_TICK.register(server -> {
             try {
-                if (server.getTicks() % 20 == 0) {
-                    BoundEntityStorage.tick(server);
-                }
+                BoundEntityStorage.tick(server);
             } catch (Throwable t) {
                 LOGGER.warn("BoundEntityStorage tick failed: ", t);
             }
+            // summons waiting for their horse's chunk to load
+            PendingSummons.tick(server);
+            // batched location updates for whistle holders
+            try {
+                HorseSyncBatcher.tick(server);
+            } catch (Throwable t) {
+                LOGGER.warn("Horse sync flush failed: ", t);
+            }
         });
 
         LOGGER.info("Horse Whistle Mod initialized!");
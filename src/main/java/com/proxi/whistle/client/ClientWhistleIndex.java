@@ -0,0 +1,106 @@
+package com.proxi.whistle.client;
+
+import com.proxi.whistle.item.WhistleItem;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * ClientWhistleIndex
+ *
+ * Client-side index: bound horse UUID -> inventory slots of the local player's whistles for
+ * it. Fed from PlayerInventory.setStack, which every slot update from the server goes
+ * through, so a sync packet only touches the slots that match instead of scanning the
+ * inventory. The index is a hint: callers check the stack in each slot and call rebuild when
+ * it turns out stale (in-place component edits do not pass through setStack).
+ *
+ * Client thread only.
+ */
+public final class ClientWhistleIndex {
+    private ClientWhistleIndex() {}
+
+    private static final int[] NONE = new int[0];
+
+    private static PlayerInventory indexed;
+    // horse referenced by each slot (null = none)
+    private static UUID[] bySlot = new UUID[0];
+    private static final Map<UUID, int[]> byHorse = new HashMap<>();
+
+    /**
+     * Slots that held a whistle for this horse when last seen. Do not modify.
+     */
+    public static int[] slots(PlayerInventory inventory, UUID horse) {
+        if (inventory != indexed) rebuild(inventory);
+        int[] slots = byHorse.get(horse);
+        return slots != null ? slots : NONE;
+    }
+
+    /**
+     * Full rescan, e.g. for a new player entity (join, respawn) or after a stale hint.
+     */
+    public static void rebuild(PlayerInventory inventory) {
+        indexed = inventory;
+        byHorse.clear();
+        bySlot = new UUID[inventory != null ? inventory.size() : 0];
+        for (int slot = 0; slot < bySlot.length; slot++) {
+            update(slot, inventory.getStack(slot));
+        }
+    }
+
+    /**
+     * Called after a slot of any PlayerInventory changed; ignores all but the indexed one.
+     */
+    public static void onSetStack(PlayerInventory inventory, int slot, ItemStack stack) {
+        if (inventory != indexed || slot < 0 || slot >= bySlot.length) return;
+        update(slot, stack);
+    }
+
+    public static void clear() {
+        indexed = null;
+        bySlot = new UUID[0];
+        byHorse.clear();
+    }
+
+    private static void update(int slot, ItemStack stack) {
+        UUID horse = stack != null && !stack.isEmpty() && stack.getItem() instanceof WhistleItem
+                ? WhistleItem.getBoundUuid(stack) : null;
+        UUID previous = bySlot[slot];
+        if (horse == null ? previous == null : horse.equals(previous)) return;
+        if (previous != null) remove(previous, slot);
+        if (horse != null) add(horse, slot);
+        bySlot[slot] = horse;
+    }
+
+    private static void add(UUID horse, int slot) {
+        int[] slots = byHorse.get(horse);
+        if (slots == null) {
+            byHorse.put(horse, new int[] {slot});
+            return;
+        }
+        int[] grown = Arrays.copyOf(slots, slots.length + 1);
+        grown[slots.length] = slot;
+        byHorse.put(horse, grown);
+    }
+
+    private static void remove(UUID horse, int slot) {
+        int[] slots = byHorse.get(horse);
+        if (slots == null) return;
+        int at = -1;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == slot) at = i;
+        }
+        if (at < 0) return;
+        if (slots.length == 1) {
+            byHorse.remove(horse);
+            return;
+        }
+        int[] shrunk = new int[slots.length - 1];
+        System.arraycopy(slots, 0, shrunk, 0, at);
+        System.arraycopy(slots, at + 1, shrunk, at, slots.length - at - 1);
+        byHorse.put(horse, shrunk);
+    }
+}
@@ -0,0 +1,88 @@
+package com.proxi.whistle.client;
+
+import com.proxi.whistle.item.WhistleItem;
+import com.proxi.whistle.mixin.HandledScreenAccessor;
+import com.proxi.whistle.network.HorseSubscribePayload;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.slot.Slot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * SyncSubscriptions
+ *
+ * Works out which bound horses the client actually shows and tells the server, so it only
+ * pushes locations for those:
+ *  - whistles in the hotbar and offhand (HUD, quick use): every HOTBAR_TICKS
+ *  - every whistle in the inventory while a container screen is open: every SCREEN_TICKS
+ *  - the whistle whose tooltip is showing: every HOVER_TICKS
+ * Whistles buried in the inventory with no screen open get nothing. The set is recomputed
+ * every few ticks and sent only when it changed.
+ *
+ * Client thread only.
+ */
+public final class SyncSubscriptions {
+    private SyncSubscriptions() {}
+
+    static final int HOVER_TICKS = 5;
+    static final int SCREEN_TICKS = 20;
+    static final int HOTBAR_TICKS = 40;
+    private static final int CHECK_EVERY_TICKS = 5;
+
+    private static Map<UUID, Integer> declared = Map.of();
+    private static boolean sentOnce;
+    private static int ticks;
+
+    public static void tick(MinecraftClient client) {
+        if (++ticks < CHECK_EVERY_TICKS) return;
+        ticks = 0;
+        if (client.player == null || !ClientPlayNetworking.canSend(HorseSubscribePayload.ID)) return;
+
+        Map<UUID, Integer> wanted = new HashMap<>();
+        PlayerInventory inv = client.player.getInventory();
+        for (int slot = 0; slot < PlayerInventory.getHotbarSize(); slot++) {
+            want(wanted, inv.getStack(slot), HOTBAR_TICKS);
+        }
+        want(wanted, client.player.getOffHandStack(), HOTBAR_TICKS);
+        if (client.currentScreen instanceof HandledScreen<?> screen) {
+            for (int slot = 0; slot < inv.size(); slot++) {
+                want(wanted, inv.getStack(slot), SCREEN_TICKS);
+            }
+            Slot focused = ((HandledScreenAccessor) screen).getFocusedSlot();
+            if (focused != null) want(wanted, focused.getStack(), HOVER_TICKS);
+        }
+
+        if (sentOnce && wanted.equals(declared)) return;
+        List<HorseSubscribePayload.Subscription> subscriptions = new ArrayList<>(wanted.size());
+        for (Map.Entry<UUID, Integer> e : wanted.entrySet()) {
+            if (subscriptions.size() == HorseSubscribePayload.MAX_SUBSCRIPTIONS) break;
+            subscriptions.add(new HorseSubscribePayload.Subscription(e.getKey(), e.getValue()));
+        }
+        ClientPlayNetworking.send(new HorseSubscribePayload(subscriptions));
+        declared = wanted;
+        sentOnce = true;
+    }
+
+    /**
+     * New connection: the server knows nothing yet.
+     */
+    public static void reset() {
+        declared = Map.of();
+        sentOnce = false;
+        ticks = 0;
+    }
+
+    private static void want(Map<UUID, Integer> wanted, ItemStack stack, int intervalTicks) {
+        if (stack == null || stack.isEmpty() || !(stack.getItem() instanceof WhistleItem)) return;
+        UUID horse = WhistleItem.getBoundUuid(stack);
+        if (horse != null) wanted.merge(horse, intervalTicks, Math::min);
+    }
+}
@@ -0,0 +1,54 @@
+package com.proxi.whistle.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.proxi.whistle.metrics.WhistleMetrics;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * /whistle operator commands.
+ *
+ *  /whistle stats  - dump the metrics registry (counters, gauges, histograms)
+ */
+public final class WhistleCommand {
+    private WhistleCommand() {}
+
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher) {
+        dispatcher.register(CommandManager.literal("whistle")
+                .requires(source -> source.hasPermissionLevel(2))
+                .then(CommandManager.literal("stats").executes(ctx -> {
+                    ServerCommandSource source = ctx.getSource();
+                    source.sendFeedback(() -> Text.literal("Whistle stats").formatted(Formatting.GOLD), false);
+                    for (Map.Entry<String, LongSupplier> e : WhistleMetrics.gauges().entrySet()) {
+                        String line = e.getKey() + " = " + e.getValue().getAsLong();
+                        source.sendFeedback(() -> Text.literal(line).formatted(Formatting.GRAY), false);
+                    }
+                    for (Map.Entry<String, WhistleMetrics.Counter> e : WhistleMetrics.counters().entrySet()) {
+                        String line = e.getKey() + " = " + e.getValue().get();
+                        source.sendFeedback(() -> Text.literal(line).formatted(Formatting.GRAY), false);
+                    }
+                    for (Map.Entry<String, WhistleMetrics.Histogram> e : WhistleMetrics.histograms().entrySet()) {
+                        WhistleMetrics.Histogram h = e.getValue();
+                        if (h.count() == 0) continue;
+                        String line = String.format(Locale.ROOT, "%s: n=%d mean=%s p50=%s p99=%s max=%s",
+                                e.getKey(), h.count(),
+                                format(h, (long) h.mean()), format(h, h.percentile(0.50)),
+                                format(h, h.percentile(0.99)), format(h, h.max()));
+                        source.sendFeedback(() -> Text.literal(line).formatted(Formatting.GRAY), false);
+                    }
+                    return 1;
+                })));
+    }
+
+    private static String format(WhistleMetrics.Histogram h, long value) {
+        if (!h.isLatency()) return Long.toString(value);
+        if (value >= 1_000_000L) return String.format(Locale.ROOT, "%.2fms", value / 1_000_000.0);
+        return String.format(Locale.ROOT, "%.1fus", value / 1_000.0);
+    }
+}
@@ -1,7 +1,34 @@
 package com.proxi.whistle.component;
 
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.PacketCodec;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Uuids;
 import net.minecraft.util.math.BlockPos;
 import java.util.UUID;
 
-public record BoundHorseData(UUID uuid, Identifier dimension, BlockPos pos) {}
\ No newline at end of file
+public record BoundHorseData(UUID uuid, Identifier dimension, BlockPos pos) {
+    // stored as an int array; whistles saved before that carry the uuid as a string, still accepted
+    public static final Codec<UUID> UUID_CODEC = Codec.withAlternative(Uuids.INT_STREAM_CODEC, Uuids.STRING_CODEC);
+
+    public static final Codec<BoundHorseData> CODEC = RecordCodecBuilder.create(instance ->
+        instance.group(
+            UUID_CODEC.fieldOf("uuid").forGetter(BoundHorseData::uuid),
+            Identifier.CODEC.fieldOf("dimension").forGetter(BoundHorseData::dimension),
+            BlockPos.CODEC.fieldOf("pos").forGetter(BoundHorseData::pos)
+        ).apply(instance, BoundHorseData::new)
+    );
+
+    // uuid as two longs on the wire
+    public static final PacketCodec<ByteBuf, BoundHorseData> PACKET_CODEC = PacketCodec.tuple(
+        Uuids.PACKET_CODEC,
+        BoundHorseData::uuid,
+        Identifier.PACKET_CODEC,
+        BoundHorseData::dimension,
+        BlockPos.PACKET_CODEC,
+        BoundHorseData::pos,
+        BoundHorseData::new
+    );
+}
@@ -0,0 +1,154 @@
+package com.proxi.whistle.config;
+
+import com.proxi.whistle.WhistleMod;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * WhistleConfig
+ *
+ * Server tuning knobs, read once from config/whistle.properties on mod init.
+ * Missing keys fall back to the defaults below and the file is (re)written with
+ * every known key so admins can see what is tunable.
+ */
+public final class WhistleConfig {
+    private WhistleConfig() {}
+
+    // ---------- write-behind persistence ----------
+    /** Regular cadence of background writes while there are dirty changes. */
+    public static long flushIntervalMs = 5_000L;
+    /** Write early once this many dirty marks have piled up. */
+    public static int flushMaxDirty = 512;
+    /** Upper bound on how long a dirty mark may wait, even when the disk is slow. */
+    public static long flushMaxLatencyMs = 30_000L;
+    /** Fold the append-only journal into a new base file once it grows past this size. */
+    public static long journalCompactBytes = 8L << 20;
+    /** Unload a shard from memory after this long without access (owner offline). */
+    public static long shardIdleMs = 300_000L;
+    /**
+     * Keep resident snapshots (their encoded bytes) under this; past it, shards of offline
+     * owners are unloaded least recently used first without waiting for shardIdleMs.
+     * 0 = no budget.
+     */
+    public static long shardMemoryBudgetBytes = 64L << 20;
+
+    // ---------- snapshot refresh ----------
+    /**
+     * Consistency sweep: every bound entity is checked (loaded? where?) about once per this
+     * many ticks. Locations are event-driven and do not wait for the sweep.
+     */
+    public static long refreshPeriodTicks = 200L;
+    /** Server-thread time the refresh may use per tick, in microseconds. */
+    public static long refreshBudgetMicros = 2_000L;
+    /**
+     * Re-capture the fallback NBT copy of a horse that stays loaded this often. Between
+     * captures the sweep only updates its location; vanilla persists the entity itself.
+     */
+    public static long fallbackRefreshTicks = 36_000L;
+
+    // ---------- resident snapshots ----------
+    /** Deflate snapshot NBT kept in memory (and in shard files); off = plain binary NBT. */
+    public static boolean snapshotCompress = true;
+    /**
+     * Captures are kept as deltas against a baseline; after this many (or once the deltas
+     * outgrow half the baseline) the next capture becomes the new baseline.
+     */
+    public static int snapshotMaxDeltas = 8;
+    /** How many decoded snapshot trees to keep around for repeated reads. */
+    public static int decodedCacheSize = 64;
+
+    /**
+     * Threads that encode and compress captured snapshots off the server thread; -1 = pick
+     * from the core count, 0 = encode on the server thread.
+     */
+    public static int encodeThreads = -1;
+
+    // ---------- client sync ----------
+    /**
+     * Horse locations go out to whistle holders in one batch per player at most this often;
+     * only locations that changed since the last batch are included.
+     */
+    public static long syncFlushTicks = 10L;
+
+    // ---------- summoning ----------
+    /** Give up on a summon whose horse's chunk has not loaded after this many ticks. */
+    public static long summonTimeoutTicks = 100L;
+
+    public static void load() {
+        Properties props = new Properties();
+        Path file = null;
+        try {
+            file = FabricLoader.getInstance().getConfigDir().resolve("whistle.properties");
+            if (Files.isRegularFile(file)) {
+                try (Reader r = Files.newBufferedReader(file)) {
+                    props.load(r);
+                }
+            }
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("Whistle: failed to read config, using defaults", t);
+        }
+
+        flushIntervalMs = getLong(props, "flush.intervalMs", flushIntervalMs, 50L);
+        flushMaxDirty = (int) getLong(props, "flush.maxDirty", flushMaxDirty, 1L);
+        flushMaxLatencyMs = Math.max(flushIntervalMs, getLong(props, "flush.maxLatencyMs", flushMaxLatencyMs, 50L));
+        journalCompactBytes = getLong(props, "journal.compactBytes", journalCompactBytes, 4096L);
+        shardIdleMs = getLong(props, "shard.idleMs", shardIdleMs, 1_000L);
+        shardMemoryBudgetBytes = getLong(props, "shard.memoryBudgetBytes", shardMemoryBudgetBytes, 0L);
+        refreshPeriodTicks = getLong(props, "refresh.periodTicks", refreshPeriodTicks, 1L);
+        refreshBudgetMicros = getLong(props, "refresh.budgetMicros", refreshBudgetMicros, 50L);
+        fallbackRefreshTicks = getLong(props, "refresh.fallbackTicks", fallbackRefreshTicks, 20L);
+        snapshotCompress = getBoolean(props, "snapshot.compress", snapshotCompress);
+        snapshotMaxDeltas = (int) getLong(props, "snapshot.maxDeltas", snapshotMaxDeltas, 0L);
+        decodedCacheSize = (int) getLong(props, "snapshot.decodedCacheSize", decodedCacheSize, 1L);
+        encodeThreads = (int) getLong(props, "snapshot.encodeThreads", encodeThreads, -1L);
+        syncFlushTicks = getLong(props, "sync.flushTicks", syncFlushTicks, 1L);
+        summonTimeoutTicks = getLong(props, "summon.timeoutTicks", summonTimeoutTicks, 1L);
+
+        if (file != null) {
+            try {
+                Files.createDirectories(file.getParent());
+                try (Writer w = Files.newBufferedWriter(file)) {
+                    props.store(w, "Whistle server settings");
+                }
+            } catch (IOException e) {
+                WhistleMod.LOGGER.warn("Whistle: failed to write config {}", file, e);
+            }
+        }
+    }
+
+    private static boolean getBoolean(Properties props, String key, boolean def) {
+        boolean value = def;
+        String raw = props.getProperty(key);
+        if (raw != null) {
+            String v = raw.trim();
+            if (v.equalsIgnoreCase("true") || v.equalsIgnoreCase("false")) {
+                value = Boolean.parseBoolean(v);
+            } else {
+                WhistleMod.LOGGER.warn("Whistle: invalid value '{}' for {}, using {}", raw, key, def);
+            }
+        }
+        props.setProperty(key, Boolean.toString(value));
+        return value;
+    }
+
+    private static long getLong(Properties props, String key, long def, long min) {
+        long value = def;
+        String raw = props.getProperty(key);
+        if (raw != null) {
+            try {
+                value = Long.parseLong(raw.trim());
+            } catch (NumberFormatException e) {
+                WhistleMod.LOGGER.warn("Whistle: invalid value '{}' for {}, using {}", raw, key, def);
+            }
+        }
+        value = Math.max(min, value);
+        props.setProperty(key, Long.toString(value));
+        return value;
+    }
+}
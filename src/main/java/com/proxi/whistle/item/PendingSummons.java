@@ -0,0 +1,221 @@
+package com.proxi.whistle.item;
+
+import com.proxi.whistle.WhistleMod;
+import com.proxi.whistle.config.WhistleConfig;
+import com.proxi.whistle.metrics.WhistleMetrics;
+import com.proxi.whistle.world.VanillaEntityReader;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.passive.AbstractHorseEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ChunkTicketType;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.Text;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkStatus;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * PendingSummons
+ *
+ * Summons of a horse whose chunk is not loaded. Instead of loading the chunk synchronously
+ * in use(), a same-dimension summon goes through these steps, one check per server tick:
+ *  1. probe the chunk on disk (async IO); a chunk that is missing or not fully generated
+ *     is never loaded, so a whistle can not trigger terrain generation
+ *  2. add a chunk ticket and wait for the chunk's entities to come in
+ *  3. teleport the horse, or recreate it from its snapshot when the chunk loaded without it
+ * Cross-dimension summons do not load anything: the horse's entity chunk is read from
+ * vanilla's entity storage (VanillaEntityReader) and the horse is recreated next to the
+ * player from that copy, or from the stored fallback when vanilla has none.
+ * A summon that takes longer than summon.timeoutTicks is dropped and the player told so.
+ *
+ * One pending summon per player. Server thread only.
+ */
+public final class PendingSummons {
+    private PendingSummons() {}
+
+    // removed by hand when the summon finishes; level 33 = just the chunk itself, fully loaded
+    private static final ChunkTicketType<ChunkPos> TICKET = ChunkTicketType.create("whistle_summon", Comparator.comparingLong(ChunkPos::toLong));
+    private static final int TICKET_RADIUS = 0;
+
+    private static final class Pending {
+        final UUID player;
+        final ItemStack stack;
+        final UUID horse;
+        final RegistryKey<World> world;
+        final ChunkPos chunk;
+        final long startTick;
+        final long startNanos;
+        CompletableFuture<Optional<NbtCompound>> probe;
+        // cross-dimension: the horse's own NBT from vanilla entity storage
+        CompletableFuture<Optional<NbtCompound>> entityRead;
+        boolean ticketed = false;
+
+        Pending(UUID player, ItemStack stack, UUID horse, RegistryKey<World> world, ChunkPos chunk, long startTick, long startNanos) {
+            this.player = player;
+            this.stack = stack;
+            this.horse = horse;
+            this.world = world;
+            this.chunk = chunk;
+            this.startTick = startTick;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final Map<UUID, Pending> byPlayer = new HashMap<>();
+
+    public static void init() {
+        WhistleMetrics.gauge("summon.pending", byPlayer::size);
+    }
+
+    public static boolean isPending(UUID player) {
+        return byPlayer.containsKey(player);
+    }
+
+    /**
+     * Begin an async summon of a horse expected in the given (unloaded) chunk.
+     */
+    static void start(ServerPlayerEntity player, ItemStack stack, UUID horse, ServerWorld world, ChunkPos chunk, long startNanos) {
+        Pending p = new Pending(player.getUuid(), stack, horse, world.getRegistryKey(), chunk, world.getServer().getTicks(), startNanos);
+        if (world.isChunkLoaded(chunk.x, chunk.z)) {
+            // chunk is already there, only its entities are not: keep it loaded while they come in
+            addTicket(world, p);
+        } else {
+            try {
+                p.probe = world.getChunkManager().chunkLoadingManager.getNbt(chunk);
+            } catch (Throwable t) {
+                p.probe = CompletableFuture.failedFuture(t);
+            }
+        }
+        byPlayer.put(p.player, p);
+    }
+
+    /**
+     * Begin a cross-dimension summon of a horse that is not loaded: read it from vanilla
+     * entity storage and recreate it next to the player once the read is done.
+     */
+    static void startFromStorage(ServerPlayerEntity player, ItemStack stack, UUID horse, ServerWorld world, ChunkPos chunk, long startNanos) {
+        Pending p = new Pending(player.getUuid(), stack, horse, world.getRegistryKey(), chunk, world.getServer().getTicks(), startNanos);
+        p.entityRead = VanillaEntityReader.read(world, chunk, horse);
+        byPlayer.put(p.player, p);
+    }
+
+    /**
+     * Advance every pending summon. Call once per server tick.
+     */
+    public static void tick(MinecraftServer server) {
+        if (byPlayer.isEmpty()) return;
+        long tick = server.getTicks();
+        Iterator<Pending> it = byPlayer.values().iterator();
+        while (it.hasNext()) {
+            Pending p = it.next();
+            boolean done;
+            try {
+                done = advance(server, tick, p);
+            } catch (Throwable t) {
+                WhistleMod.LOGGER.warn("[Whistle] summon of {} failed", p.horse, t);
+                done = true;
+            }
+            if (done) {
+                it.remove();
+                ServerWorld world = server.getWorld(p.world);
+                if (world != null && p.ticketed) removeTicket(world, p);
+            }
+        }
+    }
+
+    /**
+     * Forget everything (server stopping); tickets go away with the worlds.
+     */
+    public static void clear() {
+        byPlayer.clear();
+    }
+
+    // true when the summon is finished one way or the other
+    private static boolean advance(MinecraftServer server, long tick, Pending p) {
+        ServerPlayerEntity player = server.getPlayerManager().getPlayer(p.player);
+        ServerWorld world = server.getWorld(p.world);
+        if (player == null || world == null || !player.isAlive()) return true;
+
+        if (p.entityRead != null) {
+            if (p.entityRead.isDone()) {
+                Optional<NbtCompound> stored = p.entityRead.isCompletedExceptionally() ? Optional.empty() : p.entityRead.join();
+                if (WhistleItem.finishRecreate(player, p.stack, p.horse, stored.orElse(null))) {
+                    WhistleMetrics.USE_CROSS_DIMENSION.recordSince(p.startNanos);
+                }
+                return true;
+            }
+            if (tick - p.startTick >= WhistleConfig.summonTimeoutTicks) {
+                WhistleMetrics.SUMMON_TIMEOUT.increment();
+                player.sendMessage(Text.translatable("item.whistle.whistle.timeout"), true);
+                return true;
+            }
+            return false;
+        }
+
+        Entity entity = world.getEntity(p.horse);
+        if (entity instanceof AbstractHorseEntity horse) {
+            WhistleItem.finishTeleport(player, p.stack, horse);
+            WhistleMetrics.USE_CHUNK_LOAD.recordSince(p.startNanos);
+            return true;
+        }
+
+        if (tick - p.startTick >= WhistleConfig.summonTimeoutTicks) {
+            WhistleMetrics.SUMMON_TIMEOUT.increment();
+            player.sendMessage(Text.translatable("item.whistle.whistle.timeout"), true);
+            return true;
+        }
+
+        if (!p.ticketed) {
+            if (!p.probe.isDone()) return false;
+            Optional<NbtCompound> chunkNbt = p.probe.isCompletedExceptionally() ? Optional.empty() : p.probe.join();
+            if (chunkNbt.isEmpty() || !isFullyGenerated(chunkNbt.get())) {
+                // stale location in a chunk that does not exist: nothing to load, use the snapshot
+                return recreate(player, p);
+            }
+            addTicket(world, p);
+            return false;
+        }
+
+        // entities of the chunk are in memory and the horse was not among them
+        if (world.isChunkLoaded(p.chunk.toLong())) return recreate(player, p);
+        return false;
+    }
+
+    private static boolean recreate(ServerPlayerEntity player, Pending p) {
+        if (WhistleItem.finishRecreate(player, p.stack, p.horse)) {
+            WhistleMetrics.USE_RECREATE.recordSince(p.startNanos);
+        }
+        return true;
+    }
+
+    private static boolean isFullyGenerated(NbtCompound chunkNbt) {
+        try {
+            return ChunkStatus.byId(chunkNbt.getString("Status")) == ChunkStatus.FULL;
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+
+    private static void addTicket(ServerWorld world, Pending p) {
+        world.getChunkManager().addTicket(TICKET, p.chunk, TICKET_RADIUS, p.chunk);
+        p.ticketed = true;
+    }
+
+    private static void removeTicket(ServerWorld world, Pending p) {
+        try {
+            world.getChunkManager().removeTicket(TICKET, p.chunk, TICKET_RADIUS, p.chunk);
+        } catch (Throwable ignored) {}
+    }
+}
@@ -2,8 +2,10 @@ package com.proxi.whistle.item;
 
 import com.proxi.whistle.component.BoundHorseData;
 import com.proxi.whistle.component.ModDataComponents;
+import com.proxi.whistle.metrics.WhistleMetrics;
 import com.proxi.whistle.util.ItemStackNbtUtil;
 import com.proxi.whistle.world.BoundEntityStorage;
+import net.minecraft.component.DataComponentTypes;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
 import net.minecraft.entity.passive.AbstractHorseEntity;
@@ -21,7 +23,6 @@ import net.minecraft.util.math.ChunkPos;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.world.World;
-import net.minecraft.world.chunk.ChunkStatus;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.network.packet.s2c.play.PositionFlag;
 import net.minecraft.item.tooltip.TooltipType;
@@ -44,6 +45,7 @@ public class WhistleItem extends Item {
     @Override
     public ActionResult use(World world, PlayerEntity user, Hand hand) {
         ItemStack stack = user.getStackInHand(hand);
+        if (!world.isClient) migrateLegacyBinding(stack);
         BoundHorseData bound = stack.get(ModDataComponents.BOUND_HORSE_DATA);
 
         if (bound == null) {
@@ -55,7 +57,17 @@ public class WhistleItem extends Item {
         Identifier horseDimId = bound.dimension();
         BlockPos storedPos = bound.pos();
 
-        if (!world.isClient) {
+        if (!world.isClient && user instanceof ServerPlayerEntity player) {
+            long start = System.nanoTime();
+
+            if (PendingSummons.isPending(player.getUuid())) {
+                user.sendMessage(Text.translatable("item.whistle.whistle.pending"), true);
+                return ActionResult.FAIL;
+            }
+
+            // the horse's shard may have been unloaded while its owner was away
+            BoundEntityStorage.ensureLoaded(horseUuid);
+
             ServerWorld currentServerWorld = (ServerWorld) world;
             RegistryKey<World> horseWorldKey = RegistryKey.of(RegistryKeys.WORLD, horseDimId);
             ServerWorld horseWorld = currentServerWorld.getServer().getWorld(horseWorldKey);
@@ -70,93 +82,112 @@ public class WhistleItem extends Item {
                 return ActionResult.FAIL;
             }
 
-            AbstractHorseEntity horse = null;
             Entity maybe = horseWorld.getEntity(horseUuid);
-            if (maybe instanceof AbstractHorseEntity found) {
-                horse = found;
-            } else {
-                ChunkPos chunkPos = new ChunkPos(storedPos);
-                if (horseWorld.isChunkLoaded(chunkPos.x, chunkPos.z)) {
-                    maybe = horseWorld.getEntity(horseUuid);
-                    if (maybe instanceof AbstractHorseEntity found2) horse = found2;
-                } else {
-                    if (horseWorld == currentServerWorld) {
-                        horseWorld.getChunkManager().getChunk(chunkPos.x, chunkPos.z, ChunkStatus.FULL, true);
-                        maybe = horseWorld.getEntity(horseUuid);
-                        if (maybe instanceof AbstractHorseEntity found2) horse = found2;
-                    }
-                }
-            }
 
-            if (!horseWorld.getRegistryKey().equals(currentServerWorld.getRegistryKey())) {
-                NbtCompound snapshot = BoundEntityStorage.getSnapshotNbt(horseUuid);
-                if (snapshot == null || BoundEntityStorage.isDead(horseUuid)) {
-                    user.sendMessage(Text.translatable("item.whistle.whistle.not_found"), true);
-                    return ActionResult.FAIL;
-                }
+            // the storage locator follows the horse, the component only changes on summon
+            BoundHorseData latest = BoundEntityStorage.getLatestData(horseUuid);
+            BlockPos horsePos = latest != null && horseDimId.equals(latest.dimension()) ? latest.pos() : storedPos;
+            ChunkPos chunkPos = new ChunkPos(horsePos);
 
-                UUID newUuid = BoundEntityStorage.recreateFromSnapshot(horseUuid, currentServerWorld, user.getX(), user.getY(), user.getZ(), user.getYaw(), user.getPitch());
-                if (newUuid == null) {
-                    user.sendMessage(Text.translatable("item.whistle.whistle.recreate_failed"), true);
-                    return ActionResult.FAIL;
+            if (!horseWorld.getRegistryKey().equals(currentServerWorld.getRegistryKey())) {
+                if (maybe == null && !horseWorld.isChunkLoaded(chunkPos.toLong())) {
+                    // not loaded over there: take vanilla's saved copy of it, read off-thread
+                    PendingSummons.startFromStorage(player, stack, horseUuid, horseWorld, chunkPos, start);
+                    user.sendMessage(Text.translatable("item.whistle.whistle.pending"), true);
+                    return ActionResult.SUCCESS;
                 }
+                if (!finishRecreate(player, stack, horseUuid)) return ActionResult.FAIL;
+                WhistleMetrics.USE_CROSS_DIMENSION.recordSince(start);
+                return ActionResult.SUCCESS;
+            }
 
-                BoundHorseData newData = new BoundHorseData(newUuid, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
-                stack.set(ModDataComponents.BOUND_HORSE_DATA, newData);
-
-                // Also update client-visible NBT so the tooltip updates immediately
-                writeBindingNbt(stack, newUuid, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
+            if (maybe instanceof AbstractHorseEntity horse) {
+                finishTeleport(player, stack, horse);
+                WhistleMetrics.USE_LOADED.recordSince(start);
+                return ActionResult.SUCCESS;
+            }
 
-                currentServerWorld.playSound(null, user.getBlockPos(), SoundEvents.ENTITY_HORSE_AMBIENT, SoundCategory.PLAYERS, 1.0f, 1.0f);
-                user.getItemCooldownManager().set(stack, 200);
-                user.sendMessage(Text.translatable("item.whistle.whistle.summoned"), true);
+            if (!horseWorld.isChunkLoaded(chunkPos.toLong())) {
+                // entities of that chunk are not in memory: load them without blocking the
+                // tick and finish the summon once they are (see PendingSummons)
+                PendingSummons.start(player, stack, horseUuid, horseWorld, chunkPos, start);
+                user.sendMessage(Text.translatable("item.whistle.whistle.pending"), true);
                 return ActionResult.SUCCESS;
             }
 
-            if (horse != null) {
-                if (horse.getWorld() != currentServerWorld) {
-                    horse.teleport(currentServerWorld, user.getX(), user.getY(), user.getZ(),
-                            Set.of(PositionFlag.X, PositionFlag.Y, PositionFlag.Z),
-                            user.getYaw(), user.getPitch(), true);
-                } else {
-                    horse.requestTeleport(user.getX(), user.getY(), user.getZ());
-                }
+            // entities there are loaded but the horse is not among them: recreate it
+            if (!finishRecreate(player, stack, horseUuid)) return ActionResult.FAIL;
+            WhistleMetrics.USE_RECREATE.recordSince(start);
+            return ActionResult.SUCCESS;
+        }
 
-                BoundHorseData newData = new BoundHorseData(horseUuid, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
-                stack.set(ModDataComponents.BOUND_HORSE_DATA, newData);
+        return ActionResult.FAIL;
+    }
 
-                writeBindingNbt(stack, horseUuid, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
+    /**
+     * Bring a horse that is loaded somewhere to the player and rebind the whistle.
+     */
+    static void finishTeleport(ServerPlayerEntity user, ItemStack stack, AbstractHorseEntity horse) {
+        ServerWorld currentServerWorld = user.getServerWorld();
+        UUID horseUuid = horse.getUuid();
+        if (horse.getWorld() != currentServerWorld) {
+            horse.teleport(currentServerWorld, user.getX(), user.getY(), user.getZ(),
+                    Set.of(PositionFlag.X, PositionFlag.Y, PositionFlag.Z),
+                    user.getYaw(), user.getPitch(), true);
+        } else {
+            horse.requestTeleport(user.getX(), user.getY(), user.getZ());
+        }
 
-                currentServerWorld.playSound(null, user.getBlockPos(), SoundEvents.ENTITY_HORSE_AMBIENT, SoundCategory.PLAYERS, 1.0f, 1.0f);
-                user.getItemCooldownManager().set(stack, 200);
-                user.sendMessage(Text.translatable("item.whistle.whistle.summoned"), true);
-                return ActionResult.SUCCESS;
-            }
+        rebind(stack, horseUuid, horseUuid, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
 
-            NbtCompound snapshot = BoundEntityStorage.getSnapshotNbt(horseUuid);
-            if (snapshot == null || BoundEntityStorage.isDead(horseUuid)) {
-                user.sendMessage(Text.translatable("item.whistle.whistle.not_found"), true);
-                return ActionResult.FAIL;
-            }
-
-            UUID recreated = BoundEntityStorage.recreateFromSnapshot(horseUuid, currentServerWorld, user.getX(), user.getY(), user.getZ(), user.getYaw(), user.getPitch());
-            if (recreated == null) {
-                user.sendMessage(Text.translatable("item.whistle.whistle.recreate_failed"), true);
-                return ActionResult.FAIL;
-            }
+        currentServerWorld.playSound(null, user.getBlockPos(), SoundEvents.ENTITY_HORSE_AMBIENT, SoundCategory.PLAYERS, 1.0f, 1.0f);
+        user.getItemCooldownManager().set(stack, 200);
+        user.sendMessage(Text.translatable("item.whistle.whistle.summoned"), true);
+    }
 
-            BoundHorseData newData = new BoundHorseData(recreated, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
-            stack.set(ModDataComponents.BOUND_HORSE_DATA, newData);
+    /**
+     * Recreate the horse next to the player from its stored snapshot and rebind the whistle
+     * to the new entity. Reports failures to the player and returns false.
+     */
+    static boolean finishRecreate(ServerPlayerEntity user, ItemStack stack, UUID horseUuid) {
+        return finishRecreate(user, stack, horseUuid, null);
+    }
 
-            writeBindingNbt(stack, recreated, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
+    /**
+     * Same, recreating from the given NBT (vanilla's saved copy) when there is one.
+     */
+    static boolean finishRecreate(ServerPlayerEntity user, ItemStack stack, UUID horseUuid, NbtCompound source) {
+        ServerWorld currentServerWorld = user.getServerWorld();
+        NbtCompound snapshot = BoundEntityStorage.getSnapshotNbt(horseUuid);
+        if (snapshot == null || BoundEntityStorage.isDead(horseUuid)) {
+            user.sendMessage(Text.translatable("item.whistle.whistle.not_found"), true);
+            return false;
+        }
 
-            currentServerWorld.playSound(null, user.getBlockPos(), SoundEvents.ENTITY_HORSE_AMBIENT, SoundCategory.PLAYERS, 1.0f, 1.0f);
-            user.getItemCooldownManager().set(stack, 200);
-            user.sendMessage(Text.translatable("item.whistle.whistle.summoned"), true);
-            return ActionResult.SUCCESS;
+        UUID recreated = BoundEntityStorage.recreateFromSnapshot(horseUuid, source, currentServerWorld, user.getX(), user.getY(), user.getZ(), user.getYaw(), user.getPitch());
+        if (recreated == null) {
+            user.sendMessage(Text.translatable("item.whistle.whistle.recreate_failed"), true);
+            return false;
         }
 
-        return ActionResult.FAIL;
+        rebind(stack, horseUuid, recreated, currentServerWorld.getRegistryKey().getValue(), user.getBlockPos());
+
+        currentServerWorld.playSound(null, user.getBlockPos(), SoundEvents.ENTITY_HORSE_AMBIENT, SoundCategory.PLAYERS, 1.0f, 1.0f);
+        user.getItemCooldownManager().set(stack, 200);
+        user.sendMessage(Text.translatable("item.whistle.whistle.summoned"), true);
+        return true;
+    }
+
+    private static void rebind(ItemStack stack, UUID previous, UUID uuid, Identifier dim, BlockPos pos) {
+        // a summon finishing late must not touch a whistle that was rebound meanwhile
+        if (stack.isEmpty() || !previous.equals(getBoundUuid(stack))) return;
+        stack.set(ModDataComponents.BOUND_HORSE_DATA, new BoundHorseData(uuid, dim, pos));
+    }
+
+    @Override
+    public void inventoryTick(ItemStack stack, World world, Entity entity, int slot, boolean selected) {
+        // whistles from before the component: convert once, wherever they turn up
+        if (!world.isClient) migrateLegacyBinding(stack);
     }
 
     @Override
@@ -165,30 +196,11 @@ public class WhistleItem extends Item {
         if (data != null) {
             UUID uuid = data.uuid();
 
+            // the storage locator when this side has it (server, singleplayer), else the synced component
             BoundHorseData latest = BoundEntityStorage.getLatestData(uuid);
-            if (latest != null) {
-                tooltip.add(Text.literal("Dimension: " + latest.dimension()).formatted(Formatting.GRAY));
-                tooltip.add(Text.literal("Position: " + latest.pos().toShortString()).formatted(Formatting.GRAY));
-            } else {
-                NbtCompound root = ItemStackNbtUtil.getNbt(stack);
-                if (root != null && root.contains("WhistleBoundHorse")) {
-                    NbtCompound bh = root.getCompound("WhistleBoundHorse");
-                    try {
-                        String dim = bh.getString("dimension");
-                        int x = bh.getInt("x");
-                        int y = bh.getInt("y");
-                        int z = bh.getInt("z");
-                        tooltip.add(Text.literal("Dimension: " + dim).formatted(Formatting.GRAY));
-                        tooltip.add(Text.literal("Position: " + new BlockPos(x, y, z).toShortString()).formatted(Formatting.GRAY));
-                    } catch (Exception ignored) {
-                        tooltip.add(Text.literal("Dimension: " + data.dimension()).formatted(Formatting.GRAY));
-                        tooltip.add(Text.literal("Position: " + data.pos().toShortString()).formatted(Formatting.GRAY));
-                    }
-                } else {
-                    tooltip.add(Text.literal("Dimension: " + data.dimension()).formatted(Formatting.GRAY));
-                    tooltip.add(Text.literal("Position: " + data.pos().toShortString()).formatted(Formatting.GRAY));
-                }
-            }
+            BoundHorseData shown = latest != null ? latest : data;
+            tooltip.add(Text.literal("Dimension: " + shown.dimension()).formatted(Formatting.GRAY));
+            tooltip.add(Text.literal("Position: " + shown.pos().toShortString()).formatted(Formatting.GRAY));
 
             if (BoundEntityStorage.isDead(uuid)) {
                 tooltip.add(Text.translatable("item.whistle.whistle.dead").formatted(Formatting.RED));
@@ -203,22 +215,49 @@ public class WhistleItem extends Item {
         }
     }
 
-    private static void writeBindingNbt(ItemStack stack, UUID uuid, Identifier dim, BlockPos pos) {
-        NbtCompound root = ItemStackNbtUtil.getOrCreateNbt(stack);
-        NbtCompound bh = new NbtCompound();
-        bh.putUuid("uuid", uuid);
-        bh.putString("dimension", dim.toString());
-        bh.putInt("x", pos.getX());
-        bh.putInt("y", pos.getY());
-        bh.putInt("z", pos.getZ());
-        root.put("WhistleBoundHorse", bh);
-        ItemStackNbtUtil.setNbt(stack, root);
-    }
-	
+	/**
+	 * UUID of the horse a whistle stack is bound to, from the component. Null if unbound.
+	 */
+	public static UUID getBoundUuid(ItemStack stack) {
+		if (stack == null || stack.isEmpty()) return null;
+		BoundHorseData comp = stack.get(ModDataComponents.BOUND_HORSE_DATA);
+		return comp != null ? comp.uuid() : null;
+	}
+
+	/**
+	 * One-time conversion of a binding kept in stack NBT (WhistleBoundHorse, or the older
+	 * BoundEntity) into the component, which is the only place it lives afterwards. The
+	 * legacy blocks are removed either way; a stack that already has the component keeps
+	 * it. Returns whether the stack changed. Stacks without custom data return right away,
+	 * so this is cheap enough for every inventory tick.
+	 */
+	public static boolean migrateLegacyBinding(ItemStack stack) {
+		if (stack == null || stack.isEmpty() || !stack.contains(DataComponentTypes.CUSTOM_DATA)) return false;
+		NbtCompound root = ItemStackNbtUtil.getNbt(stack);
+		if (root == null) return false;
+		NbtCompound bound = root.get("WhistleBoundHorse") instanceof NbtCompound bh ? bh
+				: root.get("BoundEntity") instanceof NbtCompound legacy ? legacy : null;
+		if (bound == null) return false;
+
+		if (!stack.contains(ModDataComponents.BOUND_HORSE_DATA)) {
+			UUID uuid = readBoundUuid(bound);
+			if (uuid != null) {
+				Identifier dim = Identifier.tryParse(bound.getString("dimension"));
+				BlockPos pos = new BlockPos(bound.getInt("x"), bound.getInt("y"), bound.getInt("z"));
+				stack.set(ModDataComponents.BOUND_HORSE_DATA,
+						new BoundHorseData(uuid, dim != null ? dim : World.OVERWORLD.getValue(), pos));
+			}
+		}
+		root.remove("WhistleBoundHorse");
+		root.remove("BoundEntity");
+		ItemStackNbtUtil.setNbt(stack, root);
+		return true;
+	}
+
 	public static UUID readBoundUuid(NbtCompound bound) {
 		if (bound == null) return null;
 
-		// Prefer lowercase 'uuid' (what writeBindingNbt uses), but support legacy uppercase.
+		// Prefer lowercase 'uuid' (what the mod wrote last), but support legacy uppercase.
 		try {
 			if (bound.containsUuid("uuid")) {
 				return bound.getUuid("uuid");
@@ -0,0 +1,184 @@
+package com.proxi.whistle.metrics;
+
+import com.proxi.whistle.WhistleMod;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * WhistleMetrics
+ *
+ * Lightweight, lock-free metrics for the storage, sync and summon paths. Counters are
+ * LongAdders; histograms use 64 power-of-two buckets, so recording is a couple of atomic
+ * adds and percentiles are approximate (upper bound of the bucket); gauges are read on
+ * demand. Readable through /whistle stats and over JMX as com.proxi.whistle:type=Metrics.
+ *
+ * Names are dotted, e.g. "storage.tick". Latencies are recorded in nanoseconds.
+ */
+public final class WhistleMetrics {
+    private WhistleMetrics() {}
+
+    public static final String JMX_NAME = "com.proxi.whistle:type=Metrics";
+
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    // ---------- well-known metrics ----------
+    public static final Histogram TICK = histogram("storage.tick");
+    public static final Histogram REFRESH_PER_TICK = valueHistogram("storage.refresh.perTick");
+    public static final Counter REFRESHED = counter("storage.refresh.snapshots");
+    public static final Counter CAPTURE_FULL_BYTES = counter("storage.capture.fullBytes");
+    public static final Counter CAPTURE_DELTA_BYTES = counter("storage.capture.deltaBytes");
+    public static final Counter SHARD_HITS = counter("storage.shards.hits");
+    public static final Counter SHARD_MISSES = counter("storage.shards.misses");
+    public static final Counter SHARD_EVICTIONS = counter("storage.shards.evictions");
+    public static final Counter STORE_WRITES = counter("storage.mapped.writes");
+    public static final Counter STORE_READS = counter("storage.mapped.coldReads");
+    public static final Histogram SHARD_LOAD = histogram("storage.shards.load");
+    public static final Histogram SHARD_PREFETCH = histogram("storage.shards.prefetch");
+    public static final Histogram FLUSH = histogram("persist.flush");
+    public static final Histogram JOURNAL_DRAIN = histogram("persist.journal.drain");
+    public static final Histogram COMPACTION = histogram("persist.compaction");
+    public static final Counter BYTES_WRITTEN = counter("persist.bytesWritten");
+    public static final Histogram RECREATE = histogram("summon.recreate");
+    public static final Histogram USE_LOADED = histogram("summon.use.loadedTeleport");
+    public static final Histogram USE_CHUNK_LOAD = histogram("summon.use.chunkLoad");
+    public static final Histogram USE_CROSS_DIMENSION = histogram("summon.use.crossDimension");
+    public static final Histogram USE_RECREATE = histogram("summon.use.recreate");
+    public static final Counter SUMMON_TIMEOUT = counter("summon.timeouts");
+    public static final Counter SYNC_PACKETS = counter("sync.packets");
+    public static final Counter SYNC_ENTRIES = counter("sync.entries");
+    public static final Counter SYNC_BYTES = counter("sync.bytes");
+    public static final Counter SYNC_ENCODED = counter("sync.payloadsEncoded");
+    public static final Counter SYNC_DEFERRED = counter("sync.deferred");
+    public static final Counter SYNC_SUBSCRIBE = counter("sync.subscribeUpdates");
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /** Latency histogram, values in nanoseconds. */
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram(true));
+    }
+
+    /** Histogram of plain counts (e.g. items per pass). */
+    public static Histogram valueHistogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram(false));
+    }
+
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public static Map<String, Counter> counters() {
+        return counters;
+    }
+
+    public static Map<String, Histogram> histograms() {
+        return histograms;
+    }
+
+    public static Map<String, LongSupplier> gauges() {
+        return gauges;
+    }
+
+    /**
+     * Expose the registry over JMX. Safe to call more than once (integrated server restarts).
+     */
+    public static void registerJmx() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(JMX_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(new WhistleMetricsMBean(), name);
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] could not register metrics MBean", t);
+        }
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Histogram {
+        private final boolean latency;
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(boolean latency) {
+            this.latency = latency;
+        }
+
+        /** True if values are nanoseconds. */
+        public boolean isLatency() {
+            return latency;
+        }
+
+        public void record(long value) {
+            if (value < 0) value = 0;
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(value | 1));
+            count.increment();
+            sum.add(value);
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value)) {}
+        }
+
+        /** Record the time since startNanos (from System.nanoTime()). */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        public double mean() {
+            long c = count.sum();
+            return c == 0 ? 0.0 : (double) sum.sum() / c;
+        }
+
+        /** Approximate percentile (0..1): upper bound of the bucket that holds it. */
+        public long percentile(double p) {
+            long total = 0;
+            long[] snap = new long[64];
+            for (int i = 0; i < 64; i++) {
+                snap[i] = buckets.get(i);
+                total += snap[i];
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += snap[i];
+                if (seen >= rank) return i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+            return max.get();
+        }
+    }
+}
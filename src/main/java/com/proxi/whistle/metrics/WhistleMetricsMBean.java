@@ -0,0 +1,90 @@
+package com.proxi.whistle.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-only JMX view of {@link WhistleMetrics}. Each counter and gauge is one attribute; each
+ * histogram is flattened into name.count / .mean / .p50 / .p99 / .max attributes, so
+ * standard JMX exporters can scrape and alert on them without custom types.
+ */
+final class WhistleMetricsMBean implements DynamicMBean {
+    private static final String[] HISTOGRAM_STATS = { "count", "mean", "p50", "p99", "max" };
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        WhistleMetrics.Counter c = WhistleMetrics.counters().get(attribute);
+        if (c != null) return c.get();
+        LongSupplier g = WhistleMetrics.gauges().get(attribute);
+        if (g != null) return g.getAsLong();
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0) {
+            WhistleMetrics.Histogram h = WhistleMetrics.histograms().get(attribute.substring(0, dot));
+            if (h != null) {
+                switch (attribute.substring(dot + 1)) {
+                    case "count": return h.count();
+                    case "mean": return h.mean();
+                    case "p50": return h.percentile(0.50);
+                    case "p99": return h.percentile(0.99);
+                    case "max": return h.max();
+                    default: break;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String a : attributes) {
+            try {
+                list.add(new Attribute(a, getAttribute(a)));
+            } catch (AttributeNotFoundException ignored) {}
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("Whistle metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for (String name : WhistleMetrics.counters().keySet()) {
+            attrs.add(new MBeanAttributeInfo(name, "long", "counter", true, false, false));
+        }
+        for (String name : WhistleMetrics.gauges().keySet()) {
+            attrs.add(new MBeanAttributeInfo(name, "long", "gauge", true, false, false));
+        }
+        for (Map.Entry<String, WhistleMetrics.Histogram> e : WhistleMetrics.histograms().entrySet()) {
+            for (String stat : HISTOGRAM_STATS) {
+                String type = stat.equals("mean") ? "double" : "long";
+                attrs.add(new MBeanAttributeInfo(e.getKey() + "." + stat, type, "histogram " + stat, true, false, false));
+            }
+        }
+        return new MBeanInfo(WhistleMetricsMBean.class.getName(), "Whistle mod metrics",
+                attrs.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+}
@@ -0,0 +1,17 @@
+package com.proxi.whistle.mixin;
+
+import net.minecraft.world.storage.EntityChunkDataAccess;
+import net.minecraft.world.storage.StorageIoWorker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * Access to the IO worker that reads and writes a dimension's entities/*.mca files. Going
+ * through vanilla's own worker means reads see its pending writes and share its region
+ * file cache.
+ */
+@Mixin(EntityChunkDataAccess.class)
+public interface EntityChunkDataAccessAccessor {
+    @Accessor("dataLoadWorker")
+    StorageIoWorker whistle$getDataLoadWorker();
+}
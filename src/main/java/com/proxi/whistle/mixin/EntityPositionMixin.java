@@ -0,0 +1,39 @@
+package com.proxi.whistle.mixin;
+
+import com.proxi.whistle.world.BoundEntityStorage;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.passive.AbstractHorseEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Reports server-side horse movement to BoundEntityStorage whenever the horse crosses a
+ * chunk section boundary, so stored positions stay fresh without polling. Everything that
+ * is not a horse leaves after one instanceof check.
+ */
+@Mixin(Entity.class)
+public abstract class EntityPositionMixin {
+    @Unique
+    private long whistle$lastSection = Long.MIN_VALUE;
+
+    @Inject(method = "setPos(DDD)V", at = @At("TAIL"))
+    private void whistle$onSetPos(double x, double y, double z, CallbackInfo ci) {
+        Entity self = (Entity) (Object) this;
+        if (!(self instanceof AbstractHorseEntity)) return;
+        if (!(self.getWorld() instanceof ServerWorld world)) return;
+        BlockPos pos = self.getBlockPos();
+        long section = ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(pos.getX()),
+                ChunkSectionPos.getSectionCoord(pos.getY()),
+                ChunkSectionPos.getSectionCoord(pos.getZ()));
+        if (section == whistle$lastSection) return;
+        whistle$lastSection = section;
+        BoundEntityStorage.onEntityMoved(self, world);
+    }
+}
@@ -0,0 +1,16 @@
+package com.proxi.whistle.mixin;
+
+import net.minecraft.client.gui.screen.ingame.HandledScreen;
+import net.minecraft.screen.slot.Slot;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * Accessor for the slot under the mouse in a container screen, so the sync subscriptions
+ * can ask for fresher updates of the whistle whose tooltip is showing.
+ */
+@Mixin(HandledScreen.class)
+public interface HandledScreenAccessor {
+    @Accessor("focusedSlot")
+    Slot getFocusedSlot();
+}
@@ -1,7 +1,6 @@
 package com.proxi.whistle.mixin;
 
-import com.proxi.whistle.component.BoundHorseData;
-import com.proxi.whistle.component.ModDataComponents;
+import com.proxi.whistle.client.ClientWhistleIndex;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.item.ItemStack;
 import org.spongepowered.asm.mixin.Mixin;
@@ -14,10 +13,8 @@ public class PlayerInventoryMixin {
 
     @Inject(method = "setStack", at = @At("TAIL"))
     private void onSetStack(int slot, ItemStack stack, CallbackInfo ci) {
-        BoundHorseData data = stack.get(ModDataComponents.BOUND_HORSE_DATA);
-        if (data != null) {
-            // Call the private method through our @Invoker
-            WhistleItemInvoker.invokeWriteBindingNbt(stack, data.uuid(), data.dimension(), data.pos());
-        }
+        // keep the client's horse -> slot index current; returns early for any other
+        // inventory and when the slot still refers to the same horse
+        ClientWhistleIndex.onSetStack((PlayerInventory) (Object) this, slot, stack);
     }
 }
@@ -0,0 +1,15 @@
+package com.proxi.whistle.mixin;
+
+import net.minecraft.server.world.ServerEntityManager;
+import net.minecraft.world.storage.ChunkDataAccess;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * Access to the chunk data access (EntityChunkDataAccess for worlds) behind an entity manager.
+ */
+@Mixin(ServerEntityManager.class)
+public interface ServerEntityManagerAccessor {
+    @Accessor("dataAccess")
+    ChunkDataAccess<?> whistle$getDataAccess();
+}
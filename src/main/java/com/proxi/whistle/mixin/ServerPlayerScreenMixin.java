@@ -0,0 +1,22 @@
+package com.proxi.whistle.mixin;
+
+import com.proxi.whistle.world.WhistleHolderIndex;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Hands every screen handler a player opens (chests, furnaces, horse inventories...) to
+ * WhistleHolderIndex. While one is open the server diffs that handler rather than the
+ * player's own, so slot changes made through it only reach the index this way.
+ */
+@Mixin(ServerPlayerEntity.class)
+public abstract class ServerPlayerScreenMixin {
+    @Inject(method = "onScreenHandlerOpened", at = @At("TAIL"))
+    private void whistle$onScreenHandlerOpened(ScreenHandler handler, CallbackInfo ci) {
+        WhistleHolderIndex.watch((ServerPlayerEntity) (Object) this, handler);
+    }
+}
@@ -0,0 +1,17 @@
+package com.proxi.whistle.mixin;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.world.ServerEntityManager;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * Access to a world's entity manager, the first step to its entity region storage
+ * (see VanillaEntityReader).
+ */
+@Mixin(ServerWorld.class)
+public interface ServerWorldAccessor {
+    @Accessor("entityManager")
+    ServerEntityManager<Entity> whistle$getEntityManager();
+}
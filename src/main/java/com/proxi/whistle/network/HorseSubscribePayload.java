@@ -0,0 +1,51 @@
+package com.proxi.whistle.network;
+
+import com.proxi.whistle.WhistleMod;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Client -> server: the bound horses whose location the client currently shows, each with
+ * how fresh it wants it (minimum ticks between updates). Every payload replaces the previous
+ * set; an empty list means "nothing on screen". The server still only sends horses the
+ * player holds a whistle for.
+ */
+public record HorseSubscribePayload(List<Subscription> subscriptions) implements CustomPayload {
+    /** More than a full inventory of whistles; anything bigger is not a real client. */
+    public static final int MAX_SUBSCRIPTIONS = 256;
+
+    public static final CustomPayload.Id<HorseSubscribePayload> ID = new CustomPayload.Id<>(WhistleMod.HORSE_SUBSCRIBE_PACKET);
+
+    public static final PacketCodec<PacketByteBuf, HorseSubscribePayload> CODEC =
+        PacketCodec.of(HorseSubscribePayload::write, HorseSubscribePayload::read);
+
+    public record Subscription(UUID horse, int intervalTicks) {}
+
+    private static HorseSubscribePayload read(PacketByteBuf buf) {
+        int count = buf.readVarInt();
+        if (count < 0 || count > MAX_SUBSCRIPTIONS) throw new IllegalArgumentException("too many subscriptions: " + count);
+        List<Subscription> subscriptions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            subscriptions.add(new Subscription(buf.readUuid(), buf.readVarInt()));
+        }
+        return new HorseSubscribePayload(subscriptions);
+    }
+
+    private void write(PacketByteBuf buf) {
+        buf.writeVarInt(subscriptions.size());
+        for (Subscription s : subscriptions) {
+            buf.writeUuid(s.horse());
+            buf.writeVarInt(s.intervalTicks());
+        }
+    }
+
+    @Override
+    public CustomPayload.Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
@@ -0,0 +1,96 @@
+package com.proxi.whistle.network;
+
+import com.proxi.whistle.WhistleMod;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Server -> client location updates for any number of bound horses in one packet.
+ *
+ * Wire layout: varint dimension count, the dimension ids, varint entry count, then per entry
+ * uuid, varint index into the dimension table and the packed block pos. A batch rarely spans
+ * more than two dimensions, so the identifiers are written once instead of per entry.
+ *
+ * Built on the server with {@link #of}, which encodes the body right away; the same payload
+ * object can then be sent to any number of players and every send just copies those bytes.
+ * Entries carry no slot: the client matches whistles by horse UUID.
+ */
+public record HorseSyncBatchPayload(List<Entry> entries, byte[] encoded) implements CustomPayload {
+    /** Far more horses than a player can hold whistles for; anything bigger is not a real server. */
+    public static final int MAX_ENTRIES = 1024;
+    /** Far more dimensions than a batch ever spans. */
+    public static final int MAX_DIMENSIONS = 64;
+
+    public static final CustomPayload.Id<HorseSyncBatchPayload> ID = new CustomPayload.Id<>(WhistleMod.HORSE_SYNC_PACKET);
+
+    public static final PacketCodec<PacketByteBuf, HorseSyncBatchPayload> CODEC =
+        PacketCodec.of(HorseSyncBatchPayload::write, HorseSyncBatchPayload::read);
+
+    public record Entry(UUID uuid, Identifier dimension, BlockPos pos) {}
+
+    /**
+     * Server side: a payload with its body already encoded.
+     */
+    public static HorseSyncBatchPayload of(List<Entry> entries) {
+        List<Entry> copy = List.copyOf(entries);
+        return new HorseSyncBatchPayload(copy, encode(copy));
+    }
+
+    private static byte[] encode(List<Entry> entries) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer(16 + entries.size() * 26));
+        try {
+            List<Identifier> dims = new ArrayList<>(2);
+            for (Entry e : entries) {
+                if (!dims.contains(e.dimension())) dims.add(e.dimension());
+            }
+            buf.writeVarInt(dims.size());
+            for (Identifier dim : dims) buf.writeIdentifier(dim);
+            buf.writeVarInt(entries.size());
+            for (Entry e : entries) {
+                buf.writeUuid(e.uuid());
+                buf.writeVarInt(dims.indexOf(e.dimension()));
+                buf.writeLong(e.pos().asLong());
+            }
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return bytes;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static HorseSyncBatchPayload read(PacketByteBuf buf) {
+        int dimCount = buf.readVarInt();
+        if (dimCount < 0 || dimCount > MAX_DIMENSIONS) throw new IllegalArgumentException("too many dimensions: " + dimCount);
+        Identifier[] dims = new Identifier[dimCount];
+        for (int i = 0; i < dimCount; i++) dims[i] = buf.readIdentifier();
+        int count = buf.readVarInt();
+        if (count < 0 || count > MAX_ENTRIES) throw new IllegalArgumentException("too many entries: " + count);
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID uuid = buf.readUuid();
+            int dim = buf.readVarInt();
+            if (dim < 0 || dim >= dimCount) throw new IllegalArgumentException("bad dimension index " + dim);
+            entries.add(new Entry(uuid, dims[dim], BlockPos.fromLong(buf.readLong())));
+        }
+        return new HorseSyncBatchPayload(entries, null);
+    }
+
+    private void write(PacketByteBuf buf) {
+        // decoded payloads have no pre-encoded body
+        buf.writeBytes(encoded != null ? encoded : encode(entries));
+    }
+
+    @Override
+    public CustomPayload.Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
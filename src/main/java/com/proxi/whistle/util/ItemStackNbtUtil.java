@@ -1,72 +1,95 @@
 package com.proxi.whistle.util;
 
+import com.proxi.whistle.WhistleMod;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.NbtComponent;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NbtCompound;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Objects;
 
 /**
- * Small compatibility shim for ItemStack NBT accessor names across Yarn / MCP mapping differences.
- * Tries several method names in order until one works:
- *  - getNbt()
- *  - getTag()
- *  - getOrCreateNbt()
- *  - getOrCreateTag()
+ * Small compatibility shim for ItemStack NBT across mapping and version differences.
+ * The accessor is resolved once, when the class initializes, and every call goes straight
+ * to it; which one won is logged by {@link #init()}. In order of preference:
+ *  - ItemStack methods from mappings that still have a stack tag: a getter named getNbt or
+ *    getTag (or their getOrCreate variants) and a setter named setNbt or setTag, bound as
+ *    MethodHandles
+ *  - the minecraft:custom_data component, where 1.20.5+ keeps arbitrary stack NBT and where
+ *    the data fixer moved old stack tags to
+ * If neither is usable the class fails to initialize, i.e. at mod init, not per call.
  *
- * For setters it tries setNbt(NbtCompound) and setTag(NbtCompound).
+ * With the custom_data accessor the returned compound is a copy; callers that change it
+ * write it back with setNbt, as they already do.
  *
  * This lets the rest of the mod call a single API without caring about the exact mappings.
  */
 public final class ItemStackNbtUtil {
     private ItemStackNbtUtil() {}
 
-    private static Method getter = null;
-    private static Method getterOrCreate = null;
-    private static Method setter = null;
+    enum Strategy { METHOD_HANDLES, CUSTOM_DATA }
 
-    static {
-        // Try getters
-        String[] getters = new String[] { "getNbt", "getTag", "getOrCreateNbt", "getOrCreateTag" };
-        for (String name : getters) {
-            try {
-                Method m = ItemStack.class.getMethod(name);
-                getter = m;
-                // if this is an "or create" variant return as getterOrCreate too
-                if (name.toLowerCase().contains("orcreate")) getterOrCreate = m;
-                // stop on first found
-                break;
-            } catch (NoSuchMethodException ignored) {}
-        }
+    static final Strategy STRATEGY;
+    // (ItemStack)NbtCompound; only with METHOD_HANDLES
+    private static final MethodHandle GETTER;
+    // (ItemStack)NbtCompound, null if the mappings have no "or create" getter
+    private static final MethodHandle GETTER_OR_CREATE;
+    // (ItemStack,NbtCompound)void
+    private static final MethodHandle SETTER;
 
-        // If we didn't find a plain getter, try to find a plain "getNbt" that returns null (some mappings)
-        if (getter == null) {
-            try {
-                Method m = ItemStack.class.getMethod("getNbt");
-                getter = m;
-            } catch (NoSuchMethodException ignored) {}
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodType getType = MethodType.methodType(NbtCompound.class, ItemStack.class);
+        MethodHandle plain = find(lookup, getType, "getNbt", "getTag");
+        MethodHandle orCreate = find(lookup, getType, "getOrCreateNbt", "getOrCreateTag");
+        MethodHandle setter = find(lookup, MethodType.methodType(void.class, ItemStack.class, NbtCompound.class), "setNbt", "setTag");
+        MethodHandle getter = plain != null ? plain : orCreate;
+        if (getter != null && setter != null) {
+            STRATEGY = Strategy.METHOD_HANDLES;
+            GETTER = getter;
+            GETTER_OR_CREATE = orCreate;
+            SETTER = setter;
+        } else {
+            // resolve the component now so a version without it fails here, not on first use
+            Objects.requireNonNull(DataComponentTypes.CUSTOM_DATA, "no ItemStack NBT accessor available");
+            STRATEGY = Strategy.CUSTOM_DATA;
+            GETTER = null;
+            GETTER_OR_CREATE = null;
+            SETTER = null;
         }
+    }
 
-        // Try explicit getOrCreate method names
-        if (getterOrCreate == null) {
-            String[] orCreateNames = new String[] { "getOrCreateNbt", "getOrCreateTag" };
-            for (String name : orCreateNames) {
+    /**
+     * First public instance method of ItemStack with one of these names, adapted to the
+     * exact type (return values narrowed or dropped as needed), or null.
+     */
+    private static MethodHandle find(MethodHandles.Lookup lookup, MethodType type, String... names) {
+        for (String name : names) {
+            for (Method m : ItemStack.class.getMethods()) {
+                if (!m.getName().equals(name) || m.getParameterCount() != type.parameterCount() - 1) continue;
+                if (m.getParameterCount() == 1 && !m.getParameterTypes()[0].isAssignableFrom(NbtCompound.class)) continue;
+                if (type.returnType() != void.class && !NbtCompound.class.isAssignableFrom(m.getReturnType())) continue;
                 try {
-                    Method m = ItemStack.class.getMethod(name);
-                    getterOrCreate = m;
-                    break;
-                } catch (NoSuchMethodException ignored) {}
+                    MethodHandle handle = lookup.unreflect(m);
+                    if (type.returnType() == void.class && m.getReturnType() != void.class) {
+                        handle = MethodHandles.dropReturn(handle);
+                    }
+                    return handle.asType(type);
+                } catch (ReflectiveOperationException | RuntimeException ignored) {}
             }
         }
+        return null;
+    }
 
-        // Try setters
-        String[] setters = new String[] { "setNbt", "setTag" };
-        for (String name : setters) {
-            try {
-                Method m = ItemStack.class.getMethod(name, NbtCompound.class);
-                setter = m;
-                break;
-            } catch (NoSuchMethodException ignored) {}
-        }
+    /**
+     * Resolve now and report the accessor in use; call from mod init.
+     */
+    public static void init() {
+        WhistleMod.LOGGER.info("[Whistle] ItemStack NBT accessor: {}", STRATEGY);
     }
 
     /**
@@ -74,71 +97,52 @@ public final class ItemStackNbtUtil {
      */
     public static NbtCompound getNbt(ItemStack stack) {
         if (stack == null) return null;
+        if (STRATEGY == Strategy.CUSTOM_DATA) {
+            NbtComponent data = stack.get(DataComponentTypes.CUSTOM_DATA);
+            return data != null ? data.copyNbt() : null;
+        }
         try {
-            if (getter != null) {
-                Object res = getter.invoke(stack);
-                if (res instanceof NbtCompound nc) return nc;
-            }
-        } catch (Throwable ignored) {}
-        // last resort: try invoking a known name manually and catch errors
-        try {
-            Method m = ItemStack.class.getMethod("getTag");
-            Object res = m.invoke(stack);
-            if (res instanceof NbtCompound nc) return nc;
-        } catch (Throwable ignored) {}
-        return null;
+            return (NbtCompound) GETTER.invokeExact(stack);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
     }
 
     /**
-     * Returns the existing NbtCompound or creates, sets and returns a fresh one.
+     * Returns the existing NbtCompound or a fresh one; write changes back with setNbt.
      */
     public static NbtCompound getOrCreateNbt(ItemStack stack) {
         if (stack == null) return null;
-        try {
-            // If an explicit "or create" method exists, call it (it returns a non-null compound)
-            if (getterOrCreate != null) {
-                Object res = getterOrCreate.invoke(stack);
-                if (res instanceof NbtCompound nc) return nc;
-            }
-
-            // Otherwise attempt to get existing NBT
-            NbtCompound cur = getNbt(stack);
-            if (cur != null) return cur;
-
-            // create new compound and set via setter
-            NbtCompound fresh = new NbtCompound();
-            if (setter != null) {
-                setter.invoke(stack, fresh);
-                return fresh;
-            }
-
-            // fallback: try setTag reflection name
+        if (STRATEGY == Strategy.METHOD_HANDLES && GETTER_OR_CREATE != null) {
             try {
-                Method setTag = ItemStack.class.getMethod("setTag", NbtCompound.class);
-                setTag.invoke(stack, fresh);
-                return fresh;
-            } catch (Throwable ignored) {}
-
-        } catch (Throwable ignored) {}
-
-        // if all reflection failed, return a new compound but it won't persist to the ItemStack
-        return new NbtCompound();
+                return (NbtCompound) GETTER_OR_CREATE.invokeExact(stack);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        }
+        NbtCompound cur = getNbt(stack);
+        return cur != null ? cur : new NbtCompound();
     }
 
     /**
-     * Convenience: set the ItemStack's NBT compound (best-effort).
+     * Convenience: set the ItemStack's NBT compound.
      */
     public static void setNbt(ItemStack stack, NbtCompound nbt) {
         if (stack == null) return;
+        if (STRATEGY == Strategy.CUSTOM_DATA) {
+            NbtComponent.set(DataComponentTypes.CUSTOM_DATA, stack, nbt != null ? nbt : new NbtCompound());
+            return;
+        }
         try {
-            if (setter != null) {
-                setter.invoke(stack, nbt);
-                return;
-            }
-        } catch (Throwable ignored) {}
-        try {
-            Method setTag = ItemStack.class.getMethod("setTag", NbtCompound.class);
-            setTag.invoke(stack, nbt);
-        } catch (Throwable ignored) {}
+            SETTER.invokeExact(stack, nbt);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException e) return e;
+        if (t instanceof Error e) throw e;
+        return new IllegalStateException(t);
     }
 }
@@ -6,8 +6,10 @@ import net.minecraft.entity.EntityType;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.SpawnReason;
 import net.minecraft.entity.passive.AbstractHorseEntity;
+import net.minecraft.nbt.NbtByteArray;
 import net.minecraft.nbt.NbtCompound;
 import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
 import net.minecraft.nbt.NbtList;
 import net.minecraft.nbt.NbtString;
 import net.minecraft.nbt.NbtIo;
@@ -18,169 +20,1012 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.registry.RegistryKeys;
 import net.minecraft.util.WorldSavePath;
-import net.minecraft.world.World;
 import net.minecraft.nbt.NbtSizeTracker;
-import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.network.PacketByteBuf;
 import com.proxi.whistle.WhistleMod;
+import com.proxi.whistle.config.WhistleConfig;
+import com.proxi.whistle.metrics.WhistleMetrics;
 import com.proxi.whistle.component.ModDataComponents;
 import net.minecraft.item.ItemStack;
 import com.proxi.whistle.item.WhistleItem;
-import net.minecraft.server.network.ServerPlayerEntity;
-import com.proxi.whistle.network.HorseSyncPayload;
 import com.proxi.whistle.component.BoundHorseData;
 
 import io.netty.buffer.Unpooled;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
-import java.util.Iterator;
+import java.util.function.Supplier;
 
 /**
  * BoundEntityStorage
  *
  * Keeps in-memory snapshots of bound entities and persists them into the world save
- * as a single compressed NBT file (data/whistle_bound_entities.nbt).
+ * as compressed NBT shards under data/whistle/: one file per owner (owner-<uuid>.nbt),
+ * one for unowned horses, and global.nbt for recreate mappings, tombstones and the
+ * horse -> shard index. Shards are loaded on demand (player join, entity load, whistle
+ * use) and dropped from memory again once idle.
  *
  * This version avoids SavedData / PersistentState API mapping differences by writing
- * a file directly in the world save. It's simple, robust and visible to server admins.
+ * files directly in the world save. It's simple, robust and visible to server admins.
+ *
+ * The snapshots themselves (see below) live in one memory-mapped snapshots.dat
+ * ({@link MappedSnapshotStore}); shard base files only mark them as stored there, so a
+ * compaction rewrites the locators and just the snapshots that changed. A horse whose shard
+ * is not resident is read straight from the mapping, without loading the shard.
+ *
+ * Writes are write-behind and journaled: each mutation queues a small record for the
+ * append-only log next to its file (see {@link SnapshotJournal}), a background
+ * {@link PersistenceWriter} appends them on a configurable cadence and folds the log into
+ * a new base file once it grows past a threshold. The final synchronous write happens in
+ * {@link #shutdownPersistence()}. Before that, captures go through a {@link SnapshotEncoder}:
+ * the server thread runs saveNbt, and diffing, encoding, deflate and the journal record
+ * happen on the encoder's lanes.
+ *
+ * Vanilla owns the horse itself: while it is loaded the live entity is authoritative and
+ * once unloaded it sits in the dimension's entities/*.mca region files, which a summon
+ * reads directly (see {@link VanillaEntityReader}). What this store keeps per horse is a
+ * compact locator (dimension, position, flags), kept current from events, plus a slimmed
+ * fallback copy of the NBT for when the vanilla copy can not be reached. The fallback is
+ * captured on bind, on unload and by a slow sweep, never on every refresh.
+ *
+ * All of that per-horse state is one row of a {@link BoundEntityTable}, keyed by the raw
+ * UUID bits with the position packed into a long and the dimension, flags and shard as
+ * small ints, so the lookups on entity load and in tooltips do not allocate.
  */
 public final class BoundEntityStorage {
     private BoundEntityStorage() {}
 
     // ---------- in-memory state ----------
-    private static final Map<UUID, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // one row per known horse: shard, tombstone and offline marker always; data, locator and
+    // state only while its shard is resident (RESIDENT)
+    private static final BoundEntityTable entries = new BoundEntityTable(data -> ((Encoded) data).bytes());
+    // who logged out riding what, by player as well as by horse
+    private static final OfflineRiders offlineRiders = new OfflineRiders();
+    // only ever a handful of entries, a plain map is fine
     private static final Map<UUID, UUID> originalToRecreated = new ConcurrentHashMap<>();
-    private static final Set<UUID> originalsToDelete = ConcurrentHashMap.newKeySet();
-    private static final Map<UUID, String> withOfflinePlayer = new ConcurrentHashMap<>();
+    // resident shards by key
+    private static final Map<String, SnapshotShard> shards = new ConcurrentHashMap<>();
+    // shard loads under way; whoever needs the shard meanwhile waits on the same one
+    private static final Map<String, CompletableFuture<SnapshotShard>> loading = new ConcurrentHashMap<>();
 
     // persistence
-    private static volatile Path persistenceFile = null;
+    private static volatile Path storeDir = null;
     private static volatile boolean persistenceEnabled = false;
+    private static volatile SnapshotJournal globalJournal = null;
+    private static volatile PersistenceWriter writer = null;
+    // snapshots of every shard, outside the shard files; null when it could not be opened
+    private static volatile MappedSnapshotStore snapshotStore = null;
+    // horses removed since the last write, to drop from the snapshot store once their
+    // delete records are in the journal
+    private static final Queue<UUID> storeRemovals = new ConcurrentLinkedQueue<>();
+    // keys of shards, not resident, with no journal to replay: their snapshots in the store are current
+    private static final Set<String> foldedShards = ConcurrentHashMap.newKeySet();
+    // loads a joining player's shard off the server thread; one per persistence session
+    private static volatile ThreadPoolExecutor prefetcher = null;
+
+    // per-dimension sweep state, created on each world's first tick
+    private static final Map<Identifier, DimensionPartition> partitions = new ConcurrentHashMap<>();
+
+    private static final byte[][] NO_DELTAS = new byte[0][];
+
+    // encodes captures off the server thread; null until init() (then work runs inline)
+    private static volatile SnapshotEncoder encoder = null;
+    // captures handed to the encoder and not encoded yet, newest per horse
+    private static final Map<UUID, NbtCompound> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Encoded NBT of a snapshot: a full baseline plus a short chain of structural deltas
+     * (NbtDelta, oldest first). Immutable, swapped as a whole so readers on other threads
+     * always see a consistent pair.
+     */
+    private record Encoded(byte[] base, byte[][] deltas) {
+        static Encoded of(NbtCompound nbt) {
+            return new Encoded(SnapshotCodec.encode(nbt), NO_DELTAS);
+        }
+
+        // changes with every new state, so it identifies the decoded tree in the cache
+        byte[] key() {
+            return deltas.length > 0 ? deltas[deltas.length - 1] : base;
+        }
 
-    private static final class Snapshot {
-        volatile NbtCompound nbt;
-        volatile Identifier dimension;
-        volatile BlockPos pos;
-        volatile boolean loaded = false;
-        volatile boolean dead = false;
-        volatile long lastUpdatedTick = 0;
+        long bytes() {
+            long total = base.length;
+            for (byte[] d : deltas) total += d.length;
+            return total;
+        }
+
+        NbtCompound decode() {
+            NbtCompound tree = SnapshotCodec.decode(base);
+            for (byte[] d : deltas) NbtDelta.apply(tree, SnapshotCodec.decode(d));
+            return tree;
+        }
+
+        /** Decoded tree, shared through the cache: read-only, copy before changing it. */
+        NbtCompound nbt() {
+            return DecodedSnapshotCache.get(key(), this::decode);
+        }
+
+        Encoded append(byte[] delta) {
+            byte[][] next = Arrays.copyOf(deltas, deltas.length + 1);
+            next[deltas.length] = delta;
+            return new Encoded(base, next);
+        }
 
-        Snapshot(NbtCompound nbt, Identifier dimension, BlockPos pos) {
-            this.nbt = nbt;
-            this.dimension = dimension;
-            this.pos = pos;
+        /** Snapshot store form: [int deltas][int length][base], then [int length][delta] each. */
+        byte[] toBlob() {
+            ByteBuffer out = ByteBuffer.allocate(8 + 4 * deltas.length + (int) bytes());
+            out.putInt(deltas.length).putInt(base.length).put(base);
+            for (byte[] d : deltas) out.putInt(d.length).put(d);
+            return out.array();
+        }
+
+        /** Copy out of the snapshot store form, for a horse becoming resident. */
+        static Encoded fromBlob(ByteBuffer blob) {
+            int count = blob.getInt(0);
+            int at = 4;
+            byte[] base = new byte[blob.getInt(at)];
+            blob.get(at + 4, base);
+            at += 4 + base.length;
+            byte[][] deltas = count > 0 ? new byte[count][] : NO_DELTAS;
+            for (int i = 0; i < count; i++) {
+                deltas[i] = new byte[blob.getInt(at)];
+                blob.get(at + 4, deltas[i]);
+                at += 4 + deltas[i].length;
+            }
+            return new Encoded(base, deltas);
+        }
+
+        /** Decode the snapshot store form in place, without copying it out first. */
+        static NbtCompound decodeBlob(ByteBuffer blob) {
+            int count = blob.getInt(0);
+            int length = blob.getInt(4);
+            NbtCompound tree = SnapshotCodec.decode(blob.slice(8, length));
+            int at = 8 + length;
+            for (int i = 0; i < count; i++) {
+                length = blob.getInt(at);
+                NbtDelta.apply(tree, SnapshotCodec.decode(blob.slice(at + 4, length)));
+                at += 4 + length;
+            }
+            return tree;
         }
     }
 
+    private static Encoded encodedOf(UUID id) {
+        return (Encoded) entries.data(id);
+    }
+
+    /** Current tree: a capture still being encoded, else the decoded data. Read-only. */
+    private static NbtCompound nbtOf(UUID id) {
+        NbtCompound pending = inFlight.get(id);
+        if (pending != null) return pending;
+        Encoded e = encodedOf(id);
+        return e != null ? e.nbt() : null;
+    }
+
+    private static Identifier dimensionOf(UUID id) {
+        return StorageInterner.dimension(BoundEntityTable.dimensionOf(entries.meta(id)));
+    }
+
+    private static BlockPos posOf(UUID id) {
+        return BlockPos.fromLong(entries.pos(id));
+    }
+
+    private static String shardKeyOf(UUID id) {
+        return StorageInterner.shardKey(entries.shard(id));
+    }
+
+    /** Make a horse resident with a fresh baseline and locator; flags replace LOADED/DEAD. */
+    private static void putResident(UUID id, Encoded data, Identifier dim, BlockPos pos, int flags) {
+        entries.setData(id, data);
+        locateResident(id, dim, pos, flags);
+    }
+
+    private static void locateResident(UUID id, Identifier dim, BlockPos pos, int flags) {
+        entries.locate(id, StorageInterner.dimensionId(dim), pos.asLong(),
+                BoundEntityTable.RESIDENT | flags, BoundEntityTable.LOADED | BoundEntityTable.DEAD);
+    }
+
+    /**
+     * Hand a capture to the encoder. The tree is the horse's state for readers right away
+     * (see nbtOf) and must not be changed any more; work encodes it on the horse's lane.
+     */
+    private static void submit(UUID id, NbtCompound nbt, Runnable work) {
+        inFlight.put(id, nbt);
+        Runnable task = () -> {
+            try {
+                work.run();
+            } finally {
+                inFlight.remove(id, nbt);
+            }
+        };
+        SnapshotEncoder e = encoder;
+        if (e != null) e.submit(id, task);
+        else task.run();
+    }
+
+    /** New baseline from a capture, plus its full journal record (op null = no record). */
+    private static void submitBaseline(UUID id, NbtCompound nbt, SnapshotShard shard, String op) {
+        submit(id, nbt, () -> {
+            if (entries.replaceData(id, Encoded.of(nbt)) && op != null) markDirty(shard, putRecord(op, id));
+        });
+    }
+
+    /** A capture of a horse that already has data: delta (or rebase) plus its record. */
+    private static void submitCapture(UUID id, NbtCompound nbt, SnapshotShard shard, String op) {
+        submit(id, nbt, () -> {
+            if (!entries.has(id, BoundEntityTable.RESIDENT)) return;
+            markDirty(shard, captureRecord(op, id, capture(id, nbt)));
+        });
+    }
+
+    /** Wait for every capture handed to the encoder so far. */
+    private static void awaitEncoder() {
+        SnapshotEncoder e = encoder;
+        if (e != null) e.awaitIdle();
+    }
+
+    /** Placeholder for horses we only know to be dead. */
+    private static void putDeadPlaceholder(UUID id) {
+        putResident(id, Encoded.of(new NbtCompound()), StorageInterner.dimension("minecraft:overworld"), BlockPos.ORIGIN, BoundEntityTable.DEAD);
+    }
+
+    /**
+     * Record a new capture as a delta against the current state. Takes ownership of nbt.
+     * Returns the encoded delta, an empty array when nothing changed, or null when the
+     * chain was rebased instead (a new full baseline that has to be written whole).
+     */
+    private static byte[] capture(UUID id, NbtCompound nbt) {
+        Encoded e = encodedOf(id);
+        NbtCompound current = e != null ? e.nbt() : null;
+        if (current == null) {
+            entries.replaceData(id, Encoded.of(nbt));
+            return null;
+        }
+        NbtCompound delta = NbtDelta.diff(current, nbt);
+        if (delta == null) return new byte[0];
+        byte[] encoded = SnapshotCodec.encode(delta, false);
+        if (e.deltas().length >= WhistleConfig.snapshotMaxDeltas
+                || e.bytes() - e.base().length + encoded.length > e.base().length / 2) {
+            entries.replaceData(id, Encoded.of(nbt));
+            return null;
+        }
+        entries.replaceData(id, e.append(encoded));
+        // the fresh capture is exactly the new state, no need to decode it again
+        DecodedSnapshotCache.put(encoded, nbt);
+        return encoded;
+    }
+
+    /** Journal replay: append a delta, rebasing once the chain is too long. */
+    private static void applyDelta(UUID id, byte[] encoded) {
+        Encoded e = encodedOf(id);
+        if (e == null) return;
+        Encoded next = e.append(encoded);
+        entries.setData(id, next.deltas().length > WhistleConfig.snapshotMaxDeltas ? Encoded.of(next.decode()) : next);
+    }
+
     public static void init() {
-        // kept for compatibility
+        if (encoder == null) encoder = new SnapshotEncoder(SnapshotEncoder.threadsFor(WhistleConfig.encodeThreads));
+        WhistleMetrics.gauge("storage.encoder.threads", () -> {
+            SnapshotEncoder e = encoder;
+            return e != null ? e.threads() : 0L;
+        });
+        WhistleMetrics.gauge("storage.encoder.pending", () -> {
+            SnapshotEncoder e = encoder;
+            return e != null ? e.pending() : 0L;
+        });
+        WhistleMetrics.gauge("storage.snapshots.resident", () -> entries.count(BoundEntityTable.RESIDENT));
+        WhistleMetrics.gauge("storage.snapshots.indexed", entries::size);
+        WhistleMetrics.gauge("storage.offlineRiders", offlineRiders::size);
+        WhistleMetrics.gauge("storage.shards.resident", shards::size);
+        WhistleMetrics.gauge("storage.shards.budgetBytes", () -> WhistleConfig.shardMemoryBudgetBytes);
+        WhistleMetrics.gauge("storage.snapshots.encodedBytes", BoundEntityStorage::encodedBytes);
+        WhistleMetrics.gauge("storage.mapped.entries", () -> {
+            MappedSnapshotStore store = snapshotStore;
+            return store != null ? store.size() : 0L;
+        });
+        WhistleMetrics.gauge("storage.mapped.fileBytes", () -> {
+            MappedSnapshotStore store = snapshotStore;
+            return store != null ? store.fileBytes() : 0L;
+        });
+        WhistleMetrics.gauge("storage.mapped.freeBytes", () -> {
+            MappedSnapshotStore store = snapshotStore;
+            return store != null ? store.freeBytes() : 0L;
+        });
+        WhistleMetrics.gauge("storage.decodeCache.hits", DecodedSnapshotCache::hits);
+        WhistleMetrics.gauge("storage.decodeCache.misses", DecodedSnapshotCache::misses);
+        WhistleMetrics.gauge("storage.refresh.behindTicks", BoundEntityStorage::getRefreshBehindTicks);
+        WhistleMetrics.gauge("storage.refresh.lastCycleTicks", BoundEntityStorage::lastRefreshCycleTicks);
+        WhistleMetrics.gauge("persist.pendingMarks", () -> {
+            PersistenceWriter w = writer;
+            return w != null ? w.pendingCount() : 0L;
+        });
+        WhistleMetrics.gauge("sync.trackedHorses", WhistleHolderIndex::trackedHorseCount);
+        WhistleMetrics.gauge("sync.pending", HorseSyncBatcher::pendingCount);
+        WhistleMetrics.gauge("sync.subscriptions", HorseSyncBatcher::subscriptionCount);
+    }
+
+    /**
+     * Bytes held by resident encoded snapshots; a running total, cheap to read.
+     */
+    static long encodedBytes() {
+        return entries.dataBytes();
     }
 
     // ----------------- Persistence API (file-based) -----------------
 
     /**
      * Initialize file-based persistence. Call on server started.
-     * This will set the persistence file (world/data/whistle_bound_entities.nbt),
-     * load it if present, and enable markDirty() -> save behavior.
+     * This loads data/whistle/global.nbt (recreate mappings, tombstones and the horse -> shard
+     * index), migrates a legacy data/whistle_bound_entities.nbt into shards if one is present,
+     * and starts the background writer that markDirty() feeds. Shards themselves are loaded
+     * lazily (see {@link #ensureLoaded(UUID)} and {@link #onPlayerJoin(UUID)}).
      */
     public static void initPersistence(MinecraftServer server) {
         try {
             if (server == null) return;
             Path root = server.getSavePath(WorldSavePath.ROOT);
             if (root == null) return;
-            Path dataDir = root.resolve("data");
-            Files.createDirectories(dataDir);
-            persistenceFile = dataDir.resolve("whistle_bound_entities.nbt");
-            persistenceEnabled = true;
+            initPersistence(root.resolve("data"));
+        } catch (Throwable t) {
+            persistenceEnabled = false;
+            storeDir = null;
+            globalJournal = null;
+        }
+    }
+
+    /**
+     * Open the store under the given world data directory. Package-private so the
+     * benchmarks can run it against a temp directory without a server.
+     */
+    static void initPersistence(Path dataDir) {
+        try {
+            Path dir = dataDir.resolve("whistle");
+            Files.createDirectories(dir);
+
+            entries.clear();
+            offlineRiders.clear();
+            originalToRecreated.clear();
+            shards.clear();
+            loading.clear();
+            DecodedSnapshotCache.clear();
+            storeDir = dir;
+            partitions.clear();
+            storeRemovals.clear();
+            foldedShards.clear();
+
+            // shard files that say "stored" need it, so open it before anything is read
+            try {
+                snapshotStore = MappedSnapshotStore.open(dir.resolve("snapshots.dat"));
+            } catch (Throwable t) {
+                snapshotStore = null;
+                WhistleMod.LOGGER.warn("[Whistle] could not open the snapshot store, keeping snapshots in shard files", t);
+            }
 
-            // load if present
-            File f = persistenceFile.toFile();
-            if (f.exists() && f.isFile()) {
+            // the pre-shard single file, if this world still has one
+            Path legacyFile = dataDir.resolve("whistle_bound_entities.nbt");
+            Path legacyLog = legacyFile.resolveSibling(legacyFile.getFileName() + ".log");
+            boolean migrate = Files.isRegularFile(legacyFile) || Files.isRegularFile(legacyLog);
+            if (migrate) {
                 try {
-                    NbtCompound rootNbt = NbtIo.readCompressed(persistenceFile, NbtSizeTracker.ofUnlimitedBytes());
-                    if (rootNbt != null) importFromNbt(rootNbt);
+                    new SnapshotJournal(legacyFile).load(BoundEntityStorage::importFromNbt, r -> applyRecord(null, r));
                 } catch (Throwable t) {
-                    // if the file is corrupted, back it up and continue
-                    try {
-                        Path bad = dataDir.resolve("whistle_bound_entities.nbt.corrupt");
-                        Files.move(persistenceFile, bad);
-                    } catch (Throwable ignored) {}
+                    WhistleMod.LOGGER.warn("[Whistle] failed to read legacy store, migrating what was loaded", t);
                 }
             }
+
+            SnapshotJournal global = new SnapshotJournal(dir.resolve("global.nbt"));
+            try {
+                global.load(BoundEntityStorage::importGlobal, r -> applyRecord(null, r));
+            } catch (Throwable t) {
+                WhistleMod.LOGGER.warn("[Whistle] failed to replay global journal, continuing with what was loaded", t);
+            }
+            globalJournal = global;
+            persistenceEnabled = true;
+
+            if (migrate) migrateLegacy(legacyFile, legacyLog);
+
+            ThreadPoolExecutor p = new ThreadPoolExecutor(1, 1, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "Whistle-Prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+            p.allowCoreThreadTimeOut(true);
+            prefetcher = p;
+
+            PersistenceWriter w = new PersistenceWriter("Whistle-Persistence", BoundEntityStorage::persistPending,
+                    WhistleConfig.flushIntervalMs, WhistleConfig.flushMaxDirty, WhistleConfig.flushMaxLatencyMs);
+            w.start();
+            writer = w;
+            WhistleMod.LOGGER.info("[Whistle] {} bound entities indexed in {}", entries.size(), dir);
         } catch (Throwable t) {
             persistenceEnabled = false;
-            persistenceFile = null;
+            storeDir = null;
+            globalJournal = null;
+            MappedSnapshotStore store = snapshotStore;
+            snapshotStore = null;
+            if (store != null) store.close();
         }
     }
 
     /**
-     * Force immediate flush to disk (blocking). Safe to call on server thread at shutdown.
+     * Split the legacy single-file store (already imported into memory) into shards, write
+     * them out once and move the legacy files aside.
+     */
+    private static void migrateLegacy(Path legacyFile, Path legacyLog) {
+        int count = 0;
+        for (UUID id : entries.keys(BoundEntityTable.RESIDENT)) {
+            String key = shardKeyOf(id);
+            if (key == null) {
+                key = SnapshotShard.keyForOwner(ownerOf(nbtOf(id)));
+                entries.setShard(id, StorageInterner.shardId(key));
+            }
+            SnapshotShard shard = loadShard(key);
+            if (shard != null) shard.members.add(id);
+            count++;
+        }
+        flushToDisk();
+        try {
+            if (Files.isRegularFile(legacyFile)) Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+            if (Files.isRegularFile(legacyLog)) Files.move(legacyLog, legacyLog.resolveSibling(legacyLog.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] could not move legacy store aside", t);
+        }
+        WhistleMod.LOGGER.info("[Whistle] migrated {} entries from {} into {} shards", count, legacyFile.getFileName(), shards.size());
+    }
+
+    /**
+     * Stop the background writer and do the final synchronous flush. Call on server stopping.
+     */
+    public static void shutdownPersistence() {
+        // a shard still being prefetched would come back after the clear below
+        ThreadPoolExecutor p = prefetcher;
+        prefetcher = null;
+        if (p != null) {
+            p.shutdown();
+            try {
+                if (!p.awaitTermination(10, TimeUnit.SECONDS)) WhistleMod.LOGGER.warn("[Whistle] shard prefetch did not finish");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // captures still being encoded have not reached their journals yet
+        awaitEncoder();
+        PersistenceWriter w = writer;
+        writer = null;
+        if (w != null) {
+            w.shutdownAndFlush();
+        }
+        // leave compacted bases behind so the next start has no journal to replay
+        flushToDisk();
+        MappedSnapshotStore store = snapshotStore;
+        snapshotStore = null;
+        if (store != null) store.close();
+        foldedShards.clear();
+        persistenceEnabled = false;
+        storeDir = null;
+        globalJournal = null;
+        shards.clear();
+        partitions.clear();
+    }
+
+    /**
+     * Force immediate flush to disk (blocking): appends pending journal records and folds
+     * each dirty journal into a fresh base file. Clean shards are not rewritten. Prefer
+     * {@link #shutdownPersistence()} from the server thread; steady-state writes go through
+     * the background writer.
      */
     public static void flushToDisk() {
-        if (!persistenceEnabled || persistenceFile == null) return;
+        if (!persistenceEnabled) return;
+        long start = System.nanoTime();
+        awaitEncoder();
+        List<UUID> removed = takeStoreRemovals();
+        SnapshotJournal g = globalJournal;
+        if (g != null) compact(g, BoundEntityStorage::exportGlobal);
+        for (SnapshotShard shard : shards.values()) {
+            SnapshotJournal j = shard.journal;
+            if (j.hasPending() || j.logBytes() > 0 || !Files.exists(j.baseFile())) {
+                compact(j, () -> exportShard(shard));
+            }
+        }
+        dropStoredSnapshots(removed);
+        WhistleMetrics.FLUSH.recordSince(start);
+    }
+
+    private static void compact(SnapshotJournal j, Supplier<NbtCompound> export) {
+        try {
+            j.compact(export);
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] failed to compact {}", j.baseFile().getFileName(), t);
+        }
+    }
+
+    /**
+     * Background write task: append pending records of every dirty journal, compact the
+     * ones that grew large.
+     */
+    private static void persistPending() {
+        // taken first: their delete records were queued before them and go out below
+        List<UUID> removed = takeStoreRemovals();
+        SnapshotJournal g = globalJournal;
+        if (g != null) persistPending(g, BoundEntityStorage::exportGlobal);
+        long now = System.nanoTime();
+        long foldNanos = WhistleConfig.shardIdleMs * 500_000L;
+        for (SnapshotShard shard : shards.values()) {
+            persistPending(shard.journal, () -> exportShard(shard));
+            // fold shards on their way out, so once unloaded they can be read from the store
+            SnapshotJournal j = shard.journal;
+            if (snapshotStore != null && j.logBytes() > 0 && j.isSettled() && now - shard.lastAccessNanos >= foldNanos) {
+                compact(j, () -> exportShard(shard));
+            }
+        }
+        dropStoredSnapshots(removed);
+    }
+
+    private static List<UUID> takeStoreRemovals() {
+        List<UUID> removed = new ArrayList<>();
+        UUID id;
+        while ((id = storeRemovals.poll()) != null) removed.add(id);
+        return removed;
+    }
+
+    private static void dropStoredSnapshots(List<UUID> removed) {
+        MappedSnapshotStore store = snapshotStore;
+        if (store == null || removed.isEmpty()) return;
         try {
-            NbtCompound out = exportToNbt();
-            // write to temp + atomic move
-            Path tmp = persistenceFile.resolveSibling(persistenceFile.getFileName() + ".tmp");
-            File tmpf = tmp.toFile();
-            NbtIo.writeCompressed(out, tmp);
-            // atomic move (replace existing)
-            Files.move(tmp, persistenceFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
-        } catch (IOException io) {
+            for (UUID id : removed) store.remove(id);
+            store.commit();
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] failed to drop {} snapshots from the store", removed.size(), t);
+        }
+    }
+
+    /**
+     * Write the shard's changed snapshots to the store and commit them. Returns the horses
+     * whose snapshot has to stay in the shard file after all, or null (all of them) if the
+     * commit failed.
+     */
+    private static Set<UUID> storeSnapshots(MappedSnapshotStore store, SnapshotShard shard) {
+        Set<UUID> inline = new HashSet<>();
+        for (UUID id : shard.members) {
+            Encoded e = encodedOf(id);
+            if (e == null || !entries.has(id, BoundEntityTable.RESIDENT)) continue;
             try {
-                // fallback: try writing directly (non-atomic)
-                NbtCompound out = exportToNbt();
-                NbtIo.writeCompressed(out, persistenceFile);
-            } catch (Throwable ignored) {}
+                store.put(id, e.toBlob());
+            } catch (Throwable t) {
+                // a stale copy must not outlive the one in the shard file
+                inline.add(id);
+                store.remove(id);
+            }
+        }
+        try {
+            store.commit();
+            return inline;
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] failed to write snapshots of shard {}, keeping them in its file", shard.key, t);
+            return null;
+        }
+    }
+
+    private static void persistPending(SnapshotJournal j, Supplier<NbtCompound> export) {
+        try {
+            j.drain();
+            if (j.logBytes() >= WhistleConfig.journalCompactBytes) {
+                j.compact(export);
+            }
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] failed to write journal {}", j.baseFile().getFileName(), t);
+        }
+    }
+
+    private static void markDirty(SnapshotJournal j, NbtCompound record) {
+        // write-behind: the record is queued for the journal and the background writer
+        // coalesces marks and does the actual append
+        PersistenceWriter w = writer;
+        if (!persistenceEnabled || j == null || w == null) return;
+        j.append(record);
+        w.markDirty();
+    }
+
+    private static void markDirty(SnapshotShard shard, NbtCompound record) {
+        if (shard != null) markDirty(shard.journal, record);
+    }
+
+    private static void markGlobalDirty(NbtCompound record) {
+        markDirty(globalJournal, record);
+    }
+
+    // ----------------- Shards -----------------
+
+    /**
+     * Make sure the shard holding this horse is resident. Call from server-side entry points
+     * (whistle use, entity load) before reading the snapshot.
+     */
+    public static void ensureLoaded(UUID uuid) {
+        if (uuid == null || !persistenceEnabled) return;
+        String key = shardKeyOf(uuid);
+        if (key == null) return;
+        SnapshotShard shard = loadShard(key);
+        if (shard != null) shard.touch();
+    }
+
+    /**
+     * Prefetch the shard of a joining player's horses on the prefetch thread, so the join
+     * itself does not wait for the disk. Anything that needs one of those horses before the
+     * load is done (ensureLoaded, a write) waits for that same load instead of starting its
+     * own. A location update racing the replay can be overwritten with the saved one; the
+     * consistency sweep puts it right on its next visit.
+     */
+    public static void onPlayerJoin(UUID playerUuid) {
+        if (playerUuid == null || !persistenceEnabled) return;
+        String key = SnapshotShard.keyForOwner(playerUuid);
+        SnapshotShard resident = shards.get(key);
+        if (resident != null) {
+            resident.touch();
+            return;
+        }
+        Path dir = storeDir;
+        if (dir == null || !Files.exists(dir.resolve(key + ".nbt")) && !Files.exists(dir.resolve(key + ".nbt.log"))) return;
+        long start = System.nanoTime();
+        shardLoad(key, prefetcher).thenAccept(shard -> {
+            if (shard == null) return;
+            shard.touch();
+            WhistleMetrics.SHARD_PREFETCH.recordSince(start);
+        });
+    }
+
+    /**
+     * Shard for a horse we are about to write, loading or assigning one if needed. New horses
+     * are assigned by their owner tag; the assignment is then fixed for the horse's lifetime.
+     */
+    private static SnapshotShard shardFor(UUID id, NbtCompound nbt) {
+        if (!persistenceEnabled) return null;
+        String key = shardKeyOf(id);
+        if (key == null) {
+            key = SnapshotShard.keyForOwner(ownerOf(nbt));
+            entries.setShard(id, StorageInterner.shardId(key));
+            markGlobalDirty(indexRecord(id, key));
+        }
+        SnapshotShard shard = loadShard(key);
+        if (shard == null) return null;
+        shard.touch();
+        shard.members.add(id);
+        return shard;
+    }
+
+    private static SnapshotShard loadShard(String key) {
+        SnapshotShard shard = shards.get(key);
+        if (shard != null) {
+            WhistleMetrics.SHARD_HITS.increment();
+            return shard;
+        }
+        return shardLoad(key, null).join();
+    }
+
+    /**
+     * The shard, once loaded: resident already, a load under way (usually the join prefetch),
+     * or a new load run on the executor (the calling thread when null). The file is read
+     * outside any map lock, so loads of other shards never wait for this one.
+     */
+    private static CompletableFuture<SnapshotShard> shardLoad(String key, Executor executor) {
+        Path dir = storeDir;
+        if (dir == null) return CompletableFuture.completedFuture(null);
+        SnapshotShard resident = shards.get(key);
+        if (resident != null) return CompletableFuture.completedFuture(resident);
+        CompletableFuture<SnapshotShard> load = new CompletableFuture<>();
+        CompletableFuture<SnapshotShard> running = loading.putIfAbsent(key, load);
+        if (running != null) return running;
+        // a load may have finished between the two lookups
+        resident = shards.get(key);
+        if (resident != null) {
+            loading.remove(key, load);
+            load.complete(resident);
+            return load;
+        }
+        Runnable task = () -> {
+            try {
+                load.complete(persistenceEnabled && storeDir == dir ? readShard(key, dir) : null);
+            } catch (Throwable t) {
+                load.completeExceptionally(t);
+            } finally {
+                loading.remove(key, load);
+            }
+        };
+        try {
+            if (executor != null) {
+                executor.execute(task);
+                return load;
+            }
+        } catch (RejectedExecutionException ignored) {}
+        task.run();
+        return load;
+    }
+
+    // the caller owns the load of this key
+    private static SnapshotShard readShard(String key, Path dir) {
+        long start = System.nanoTime();
+        foldedShards.remove(key);
+        SnapshotShard s = new SnapshotShard(key, SnapshotShard.ownerOfKey(key), dir);
+        try {
+            s.journal.load(root -> importShard(s, root), r -> applyRecord(s, r));
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] failed to load shard {}, continuing with what was loaded", key, t);
+        }
+        // resident before the load is dropped from loading, so there is no gap in between
+        shards.put(key, s);
+        WhistleMetrics.SHARD_MISSES.increment();
+        WhistleMetrics.SHARD_LOAD.recordSince(start);
+        return s;
+    }
+
+    private static UUID ownerOf(NbtCompound nbt) {
+        try {
+            if (nbt != null && nbt.containsUuid("Owner")) return nbt.getUuid("Owner");
         } catch (Throwable ignored) {}
+        return null;
     }
 
-    private static void markDirty() {
-        // simple behavior: write on each change (safe but may be frequent).
-        // If you want to throttle writes, replace this with a scheduled flush.
-        if (!persistenceEnabled) return;
+    /**
+     * Drop shards nobody needs from memory: idle for a while, owner offline, none of their
+     * horses loaded in a world and everything already on disk. While the resident snapshots
+     * are over shard.memoryBudgetBytes, shards that qualify apart from the idle time go too,
+     * least recently used first. Never waits on the writer.
+     */
+    private static void unloadIdleShards(MinecraftServer server) {
+        PersistenceWriter w = writer;
+        if (w == null) return;
+        long now = System.nanoTime();
+        long idleNanos = WhistleConfig.shardIdleMs * 1_000_000L;
+        long budget = WhistleConfig.shardMemoryBudgetBytes;
+        List<SnapshotShard> evictable = new ArrayList<>();
+        for (SnapshotShard shard : shards.values()) {
+            boolean idle = now - shard.lastAccessNanos >= idleNanos;
+            if (!idle && !overBudget(budget)) continue;
+            if (!evictable(server, shard)) continue;
+            if (idle) unload(w, shard);
+            else evictable.add(shard);
+        }
+        if (!overBudget(budget) || evictable.isEmpty()) return;
+        evictable.sort(Comparator.comparingLong(shard -> shard.lastAccessNanos));
+        for (SnapshotShard shard : evictable) {
+            if (!overBudget(budget)) break;
+            // a shard holding no snapshots frees nothing
+            if (shardBytes(shard) == 0) continue;
+            // the writer is busy; try again on the next pass
+            if (!unload(w, shard)) break;
+            WhistleMetrics.SHARD_EVICTIONS.increment();
+        }
+    }
+
+    private static boolean overBudget(long budget) {
+        return budget > 0 && entries.dataBytes() > budget;
+    }
+
+    /** Owner offline, everything on disk and none of its horses loaded or being encoded. */
+    private static boolean evictable(MinecraftServer server, SnapshotShard shard) {
+        if (shard.owner != null && server.getPlayerManager().getPlayer(shard.owner) != null) return false;
+        if (!shard.journal.isSettled()) return false;
+        for (UUID id : shard.members) {
+            // a capture still in the encoder counts as in use
+            if (entries.has(id, BoundEntityTable.LOADED) || inFlight.containsKey(id)) return false;
+        }
+        return true;
+    }
+
+    private static long shardBytes(SnapshotShard shard) {
+        return entries.dataBytesIn(StorageInterner.shardId(shard.key));
+    }
+
+    /** True when the shard was dropped; false when the writer was busy or more came in. */
+    private static boolean unload(PersistenceWriter w, SnapshotShard shard) {
+        boolean[] unloaded = new boolean[1];
+        w.tryWhileIdle(() -> {
+            if (!shard.journal.isSettled()) return;
+            long bytes = shardBytes(shard);
+            shards.remove(shard.key, shard);
+            for (UUID id : shard.members) entries.release(id);
+            if (shard.journal.logBytes() == 0) foldedShards.add(shard.key);
+            unloaded[0] = true;
+            WhistleMod.LOGGER.debug("[Whistle] unloaded shard {} ({} entries, {} bytes)", shard.key, shard.members.size(), bytes);
+        });
+        return unloaded[0];
+    }
+
+    // ----------------- Journal records -----------------
+    // Every record carries absolute state for one key so replaying it twice is harmless.
+    // Entry records go to the horse's shard journal; mappings, tombstones and the shard
+    // index go to the global journal.
+
+    private static NbtCompound record(String op, UUID uuid) {
+        NbtCompound r = new NbtCompound();
+        r.putString("op", op);
+        r.putString("uuid", uuid.toString());
+        return r;
+    }
+
+    /** store / update / load / unload: the full entry as it is now. */
+    private static NbtCompound putRecord(String op, UUID uuid) {
+        NbtCompound r = writeEntry(uuid);
+        r.putString("op", op);
+        return r;
+    }
+
+    /**
+     * Journal record for a capture that went through capture(): just the delta (plus the
+     * locator) when one was appended, the full entry when the chain was rebased.
+     */
+    private static NbtCompound captureRecord(String op, UUID uuid, byte[] delta) {
+        if (delta == null) {
+            Encoded e = encodedOf(uuid);
+            if (e != null) WhistleMetrics.CAPTURE_FULL_BYTES.add(e.base().length);
+            return putRecord(op, uuid);
+        }
+        NbtCompound r = moveRecord(uuid, dimensionOf(uuid), posOf(uuid), entries.has(uuid, BoundEntityTable.LOADED));
+        if (delta.length > 0) {
+            r.putString("op", "delta");
+            r.putByteArray("delta", delta);
+            WhistleMetrics.CAPTURE_DELTA_BYTES.add(delta.length);
+        }
+        return r;
+    }
+
+    private static NbtCompound offlineRecord(UUID uuid, UUID player, String playerName) {
+        NbtCompound r = record("offline", uuid);
+        if (playerName != null) r.putString("offlinePlayer", playerName);
+        if (playerName != null && player != null) r.putUuid("offlinePlayerId", player);
+        return r;
+    }
+
+    /** Offline marker from a saved entry or record; absent = cleared. */
+    private static void readOffline(UUID id, NbtCompound r) {
+        if (r.contains("offlinePlayer")) {
+            setOffline(id, r.containsUuid("offlinePlayerId") ? r.getUuid("offlinePlayerId") : null, r.getString("offlinePlayer"));
+        } else {
+            setOffline(id, null, null);
+        }
+    }
+
+    private static NbtCompound mappingRecord(UUID original, UUID recreated) {
+        NbtCompound r = record("recreate", original);
+        r.putString("recreated", recreated.toString());
+        return r;
+    }
+
+    /** Locator only: where the horse is and whether it is loaded there. */
+    private static NbtCompound moveRecord(UUID uuid, Identifier dim, BlockPos pos, boolean loaded) {
+        NbtCompound r = record("move", uuid);
+        r.putBoolean("loaded", loaded);
+        r.putString("dimension", dim.toString());
+        r.putInt("x", pos.getX());
+        r.putInt("y", pos.getY());
+        r.putInt("z", pos.getZ());
+        return r;
+    }
+
+    private static NbtCompound indexRecord(UUID uuid, String shardKey) {
+        NbtCompound r = record("index", uuid);
+        r.putString("shard", shardKey);
+        return r;
+    }
+
+    /**
+     * Apply one journal record. shard is the shard whose journal is being replayed, or null
+     * for the global (and legacy) journal.
+     */
+    private static void applyRecord(SnapshotShard shard, NbtCompound r) {
         try {
-            flushToDisk();
+            String op = r.getString("op");
+            UUID id = UUID.fromString(r.getString("uuid"));
+            switch (op) {
+                case "store", "update", "load", "unload" -> {
+                    readEntry(id, r);
+                    readOffline(id, r);
+                    if (shard != null) {
+                        shard.members.add(id);
+                        entries.setShardIfAbsent(id, StorageInterner.shardId(shard.key));
+                    }
+                }
+                case "dead" -> {
+                    if (entries.has(id, BoundEntityTable.RESIDENT)) entries.update(id, BoundEntityTable.DEAD, 0);
+                    else putDeadPlaceholder(id);
+                    if (shard != null) shard.members.add(id);
+                }
+                case "move", "delta" -> {
+                    if (entries.has(id, BoundEntityTable.RESIDENT)) {
+                        if (r.contains("delta", NbtElement.BYTE_ARRAY_TYPE)) applyDelta(id, r.getByteArray("delta"));
+                        boolean loaded = r.contains("loaded") ? r.getBoolean("loaded") : entries.has(id, BoundEntityTable.LOADED);
+                        entries.locate(id, StorageInterner.dimensionId(StorageInterner.dimension(r.getString("dimension"))),
+                                BlockPos.asLong(r.getInt("x"), r.getInt("y"), r.getInt("z")),
+                                loaded ? BoundEntityTable.LOADED : 0, loaded ? BoundEntityTable.DEAD : BoundEntityTable.LOADED);
+                    }
+                }
+                case "offline" -> readOffline(id, r);
+                case "index" -> entries.setShard(id, StorageInterner.shardId(r.getString("shard")));
+                case "recreate" -> originalToRecreated.put(id, UUID.fromString(r.getString("recreated")));
+                case "tombstone" -> entries.update(id, BoundEntityTable.TO_DELETE, 0);
+                case "drop" -> {
+                    entries.release(id);
+                    entries.setShard(id, 0);
+                    if (shard != null) shard.members.remove(id);
+                }
+                case "delete" -> {
+                    entries.remove(id);
+                    offlineRiders.remove(id);
+                    originalToRecreated.remove(id);
+                    if (shard != null) shard.members.remove(id);
+                }
+                default -> WhistleMod.LOGGER.warn("[Whistle] unknown journal op '{}'", op);
+            }
         } catch (Throwable ignored) {}
     }
 
     // ----------------- Export / Import (persistence format) -----------------
 
     /**
-     * Build NBT root that contains our serialized state.
+     * Build NBT root that contains our serialized state (every resident entry plus the
+     * global tables), in the legacy single-file format.
      */
     public static NbtCompound exportToNbt() {
+        awaitEncoder();
+        NbtCompound root = exportGlobal();
+        NbtList list = new NbtList();
+        for (UUID id : entries.keys(BoundEntityTable.RESIDENT)) {
+            try {
+                list.add(writeEntry(id));
+            } catch (Throwable ignored) {}
+        }
+        root.put("entries", list);
+        return root;
+    }
+
+    /**
+     * Entries of one shard.
+     */
+    private static NbtCompound exportShard(SnapshotShard shard) {
         NbtCompound root = new NbtCompound();
         root.putInt("version", 1);
-
-        NbtList entries = new NbtList();
-        for (Map.Entry<UUID, Snapshot> e : snapshots.entrySet()) {
-            UUID id = e.getKey();
-            Snapshot s = e.getValue();
+        // snapshots go to the store before the file that points at them
+        MappedSnapshotStore store = snapshotStore;
+        Set<UUID> inline = store != null ? storeSnapshots(store, shard) : null;
+        NbtList list = new NbtList();
+        for (UUID id : shard.members) {
+            if (!entries.has(id, BoundEntityTable.RESIDENT)) continue;
             try {
-                NbtCompound ent = new NbtCompound();
-                ent.putString("uuid", id.toString());
-                ent.put("nbt", s.nbt != null ? s.nbt.copy() : new NbtCompound());
-                ent.putString("dimension", s.dimension != null ? s.dimension.toString() : "minecraft:overworld");
-                ent.putInt("x", s.pos != null ? s.pos.getX() : 0);
-                ent.putInt("y", s.pos != null ? s.pos.getY() : 0);
-                ent.putInt("z", s.pos != null ? s.pos.getZ() : 0);
-                ent.putBoolean("loaded", s.loaded);
-                ent.putBoolean("dead", s.dead);
-                String offline = withOfflinePlayer.get(id);
-                if (offline != null) ent.putString("offlinePlayer", offline);
-                entries.add(ent);
+                list.add(writeEntry(id, inline == null || inline.contains(id)));
             } catch (Throwable ignored) {}
         }
-        root.put("entries", entries);
+        root.put("entries", list);
+        return root;
+    }
+
+    /**
+     * Recreate mappings, tombstones and the horse -> shard index.
+     */
+    private static NbtCompound exportGlobal() {
+        NbtCompound root = new NbtCompound();
+        root.putInt("version", 1);
 
         NbtList mappings = new NbtList();
         for (Map.Entry<UUID, UUID> map : originalToRecreated.entrySet()) {
@@ -192,51 +1037,141 @@ public final class BoundEntityStorage {
         root.put("originalMappings", mappings);
 
         NbtList strings = new NbtList();
-        for (UUID u : originalsToDelete) strings.add(NbtString.of(u.toString()));
+        for (UUID u : entries.keys(BoundEntityTable.TO_DELETE)) strings.add(NbtString.of(u.toString()));
         root.put("originalsToDelete", strings);
 
+        // grouped by shard so each key is written once
+        Map<String, NbtList> byShard = new HashMap<>();
+        for (UUID id : entries.keys(BoundEntityTable.USED)) {
+            String key = shardKeyOf(id);
+            if (key != null) byShard.computeIfAbsent(key, k -> new NbtList()).add(NbtHelper.fromUuid(id));
+        }
+        NbtCompound index = new NbtCompound();
+        for (Map.Entry<String, NbtList> e : byShard.entrySet()) index.put(e.getKey(), e.getValue());
+        root.put("shardIndex", index);
+
         return root;
     }
 
+    private static NbtCompound writeEntry(UUID id) {
+        return writeEntry(id, true);
+    }
+
+    /** inline false: the snapshot is in the snapshot store, only say so. */
+    private static NbtCompound writeEntry(UUID id, boolean inline) {
+        NbtCompound ent = new NbtCompound();
+        ent.putString("uuid", id.toString());
+        // encoded arrays are replaced, never mutated, so they can be shared with the writer
+        Encoded data = encodedOf(id);
+        if (data != null && !inline) {
+            ent.putBoolean("stored", true);
+        } else if (data != null) {
+            ent.putByteArray("nbtData", data.base());
+            if (data.deltas().length > 0) {
+                NbtList deltas = new NbtList();
+                for (byte[] d : data.deltas()) deltas.add(new NbtByteArray(d));
+                ent.put("nbtDeltas", deltas);
+            }
+        } else {
+            ent.put("nbt", new NbtCompound());
+        }
+        int meta = entries.meta(id);
+        Identifier dim = StorageInterner.dimension(BoundEntityTable.dimensionOf(meta));
+        BlockPos pos = posOf(id);
+        ent.putString("dimension", dim != null ? dim.toString() : "minecraft:overworld");
+        ent.putInt("x", pos.getX());
+        ent.putInt("y", pos.getY());
+        ent.putInt("z", pos.getZ());
+        ent.putBoolean("loaded", (meta & BoundEntityTable.LOADED) != 0);
+        ent.putBoolean("dead", (meta & BoundEntityTable.DEAD) != 0);
+        String offline = entries.offline(id);
+        if (offline != null) {
+            ent.putString("offlinePlayer", offline);
+            UUID rider = offlineRiders.playerOf(id);
+            if (rider != null) ent.putUuid("offlinePlayerId", rider);
+        }
+        return ent;
+    }
+
+    /** Make the entry resident from its saved form. */
+    private static void readEntry(UUID id, NbtCompound ent) {
+        Identifier dim = StorageInterner.dimension(ent.getString("dimension"));
+        BlockPos pos = new BlockPos(ent.getInt("x"), ent.getInt("y"), ent.getInt("z"));
+        Encoded data;
+        if (ent.contains("nbtData", NbtElement.BYTE_ARRAY_TYPE)) {
+            // current format: keep the encoded bytes as they are, nothing to decode
+            byte[][] deltas = NO_DELTAS;
+            if (ent.contains("nbtDeltas", NbtElement.LIST_TYPE)) {
+                NbtList list = ent.getList("nbtDeltas", NbtElement.BYTE_ARRAY_TYPE);
+                deltas = new byte[list.size()][];
+                for (int i = 0; i < list.size(); i++) deltas[i] = ((NbtByteArray) list.get(i)).getByteArray();
+            }
+            data = new Encoded(ent.getByteArray("nbtData"), deltas);
+        } else if (ent.getBoolean("stored")) {
+            data = storedSnapshot(id);
+        } else {
+            // older files carry the plain compound
+            data = Encoded.of(ent.contains("nbt") ? ent.getCompound("nbt") : new NbtCompound());
+        }
+        int flags = (ent.getBoolean("loaded") ? BoundEntityTable.LOADED : 0) | (ent.getBoolean("dead") ? BoundEntityTable.DEAD : 0);
+        putResident(id, data, dim, pos, flags);
+        // do not carry process tick counters across saves
+        entries.setTick(id, 0);
+    }
+
+    /** Copy of a horse's snapshot from the store; empty if the store does not have it. */
+    private static Encoded storedSnapshot(UUID id) {
+        MappedSnapshotStore store = snapshotStore;
+        Encoded data = store != null ? store.read(id, Encoded::fromBlob) : null;
+        if (data != null) return data;
+        WhistleMod.LOGGER.warn("[Whistle] snapshot of {} is missing from the snapshot store", id);
+        return Encoded.of(new NbtCompound());
+    }
+
     /**
-     * Load NBT from file and populate in-memory structures.
+     * Load NBT in the legacy single-file format and populate in-memory structures.
      */
     public static void importFromNbt(NbtCompound root) {
         try {
             if (root == null) return;
             int version = root.contains("version") ? root.getInt("version") : 1;
 
-            snapshots.clear();
+            entries.clear();
+            offlineRiders.clear();
             originalToRecreated.clear();
-            originalsToDelete.clear();
-            withOfflinePlayer.clear();
 
-            if (root.contains("entries")) {
-                NbtList entries = root.getList("entries", NbtElement.COMPOUND_TYPE);
-                for (int i = 0; i < entries.size(); i++) {
-                    try {
-                        NbtCompound ent = entries.getCompound(i);
-                        String uuidStr = ent.getString("uuid");
-                        if (uuidStr == null || uuidStr.isEmpty()) continue;
-                        UUID id = UUID.fromString(uuidStr);
-                        NbtCompound nbt = ent.contains("nbt") ? ent.getCompound("nbt") : new NbtCompound();
-                        Identifier dim = Identifier.tryParse(ent.getString("dimension"));
-                        int x = ent.getInt("x");
-                        int y = ent.getInt("y");
-                        int z = ent.getInt("z");
-                        Snapshot s = new Snapshot(nbt, dim, new BlockPos(x, y, z));
-                        s.loaded = ent.getBoolean("loaded");
-                        s.dead = ent.getBoolean("dead");
-						// NEW: do not carry process tick counters across saves
-						s.lastUpdatedTick = 0L;
-                        snapshots.put(id, s);
-                        if (ent.contains("offlinePlayer")) {
-                            withOfflinePlayer.put(id, ent.getString("offlinePlayer"));
-                        }
-                    } catch (Throwable ignored) {}
+            importEntries(null, root);
+            importGlobal(root);
+        } catch (Throwable ignored) {}
+    }
+
+    private static void importShard(SnapshotShard shard, NbtCompound root) {
+        try {
+            importEntries(shard, root);
+        } catch (Throwable ignored) {}
+    }
+
+    private static void importEntries(SnapshotShard shard, NbtCompound root) {
+        if (!root.contains("entries")) return;
+        NbtList entries = root.getList("entries", NbtElement.COMPOUND_TYPE);
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                NbtCompound ent = entries.getCompound(i);
+                String uuidStr = ent.getString("uuid");
+                if (uuidStr == null || uuidStr.isEmpty()) continue;
+                UUID id = UUID.fromString(uuidStr);
+                readEntry(id, ent);
+                if (ent.contains("offlinePlayer")) readOffline(id, ent);
+                if (shard != null) {
+                    shard.members.add(id);
+                    entries.setShardIfAbsent(id, StorageInterner.shardId(shard.key));
                 }
-            }
+            } catch (Throwable ignored) {}
+        }
+    }
 
+    private static void importGlobal(NbtCompound root) {
+        try {
             if (root.contains("originalMappings")) {
                 NbtList mappings = root.getList("originalMappings", NbtElement.COMPOUND_TYPE);
                 for (int i = 0; i < mappings.size(); i++) {
@@ -254,79 +1189,98 @@ public final class BoundEntityStorage {
                 for (int i = 0; i < deletes.size(); i++) {
                     try {
                         String u = deletes.getString(i);
-                        originalsToDelete.add(UUID.fromString(u));
+                        entries.update(UUID.fromString(u), BoundEntityTable.TO_DELETE, 0);
                     } catch (Throwable ignored) {}
                 }
             }
+
+            if (root.contains("shardIndex")) {
+                NbtCompound index = root.getCompound("shardIndex");
+                for (String key : index.getKeys()) {
+                    NbtList ids = index.getList(key, NbtElement.INT_ARRAY_TYPE);
+                    int shardId = StorageInterner.shardId(key);
+                    for (int i = 0; i < ids.size(); i++) {
+                        try {
+                            entries.setShard(NbtHelper.toUuid(ids.get(i)), shardId);
+                        } catch (Throwable ignored) {}
+                    }
+                }
+            }
         } catch (Throwable ignored) {}
     }
 
     // ----------------- Runtime API (mutations) -----------------
 
+    /**
+     * Store a new baseline. Takes ownership of nbt: it is encoded on the encoder thread and
+     * must not be changed afterwards.
+     */
     public static void storeSnapshot(UUID uuid, NbtCompound nbt, Identifier dimension, BlockPos pos) {
-        NbtCompound copy = nbt != null ? nbt.copy() : new NbtCompound();
-        snapshots.put(uuid, new Snapshot(copy, dimension, pos));
-        withOfflinePlayer.remove(uuid);
-        markDirty();
+        NbtCompound source = nbt != null ? nbt : new NbtCompound();
+        SnapshotShard shard = shardFor(uuid, source);
+        boolean loaded = entries.has(uuid, BoundEntityTable.LOADED);
+        locateResident(uuid, dimension, pos, loaded ? BoundEntityTable.LOADED : 0);
+        entries.setTick(uuid, 0);
+        setOffline(uuid, null, null);
+        submitBaseline(uuid, source, shard, "store");
     }
 
     public static void updateSnapshotFromEntity(Entity entity) {
         if (entity == null) return;
-        UUID id = entity.getUuid();
-        Snapshot s = snapshots.get(id);
-        NbtCompound nbt = new NbtCompound();
-        try {
-            entity.saveNbt(nbt);
-        } catch (Throwable ignored) {}
-        Identifier dim = entity.getWorld().getRegistryKey().getValue();
-        BlockPos pos = entity.getBlockPos();
+        NbtCompound nbt = captureFallback(entity);
+        updateSnapshot(entity.getUuid(), nbt, entity.getWorld().getRegistryKey().getValue(), entity.getBlockPos());
+    }
 
-        if (s == null) {
-            snapshots.put(id, new Snapshot(nbt, dim, pos));
-            markDirty();
+    /**
+     * Everything updateSnapshotFromEntity does after the capture. Package-private so the
+     * benchmarks can drive it without an entity.
+     */
+    static void updateSnapshot(UUID id, NbtCompound nbt, Identifier dim, BlockPos pos) {
+        SnapshotShard shard = shardFor(id, nbt);
+
+        if (!entries.has(id, BoundEntityTable.RESIDENT)) {
+            locateResident(id, dim, pos, BoundEntityTable.LOADED);
+            entries.setTick(id, 0);
+            submitBaseline(id, nbt, shard, "update");
             return;
         }
-        s.nbt = nbt;
-        s.pos = pos;
-        s.dimension = dim;
-        s.loaded = true;
-        markDirty();
+        entries.locate(id, StorageInterner.dimensionId(dim), pos.asLong(), BoundEntityTable.LOADED, 0);
+        submitCapture(id, nbt, shard, "update");
     }
 
     public static void onEntityUnload(Entity entity, ServerWorld world) {
         if (!(entity instanceof LivingEntity)) return;
         UUID id = entity.getUuid();
-        NbtCompound nbt = new NbtCompound();
-        try {
-            entity.saveNbt(nbt);
-        } catch (Throwable ignored) {}
+        // vanilla is about to write the same entity to its region file; ours is the fallback
+        NbtCompound nbt = captureFallback(entity);
+        SnapshotShard shard = shardFor(id, nbt);
         Identifier dim = world.getRegistryKey().getValue();
         BlockPos pos = entity.getBlockPos();
-        Snapshot s = snapshots.computeIfAbsent(id, k -> new Snapshot(nbt, dim, pos));
-        s.nbt = nbt;
-        s.dimension = dim;
-        s.pos = pos;
-        s.loaded = false;
-        markDirty();
+        boolean resident = entries.has(id, BoundEntityTable.RESIDENT);
+        if (!resident) locateResident(id, dim, pos, 0);
+        else entries.locate(id, StorageInterner.dimensionId(dim), pos.asLong(), 0, BoundEntityTable.LOADED);
+        entries.setTick(id, world.getServer().getTicks());
+        if (resident) submitCapture(id, nbt, shard, "unload");
+        else submitBaseline(id, nbt, shard, "unload");
     }
 
     public static void onEntityLoad(Entity entity, ServerWorld world) {
         UUID id = entity.getUuid();
-        Snapshot s = snapshots.get(id);
-        if (s != null) {
-            s.loaded = true;
-            s.dimension = world.getRegistryKey().getValue();
-            s.pos = entity.getBlockPos();
-            NbtCompound nbt = new NbtCompound();
-            try {
-                entity.saveNbt(nbt);
-            } catch (Throwable ignored) {}
-            s.nbt = nbt;
-            s.dead = false;
-            markDirty();
+        ensureLoaded(id);
+        // runs for every entity that loads anywhere: a plain table probe, nothing allocated
+        // unless the entity is one of ours
+        int meta = entries.meta(id);
+        if ((meta & BoundEntityTable.RESIDENT) != 0) {
+            // the entity was just read from the very data our fallback was captured from:
+            // only the locator changes
+            Identifier dim = world.getRegistryKey().getValue();
+            BlockPos pos = entity.getBlockPos();
+            entries.locate(id, StorageInterner.dimensionId(dim), pos.asLong(), BoundEntityTable.LOADED, BoundEntityTable.DEAD);
+            if (entries.tick(id) == 0) entries.setTick(id, world.getServer().getTicks());
+            markDirty(shardFor(id, null), moveRecord(id, dim, pos, true));
         }
 
-        if (originalsToDelete.contains(id)) {
+        if ((meta & BoundEntityTable.TO_DELETE) != 0) {
             try {
                 entity.discard();
             } catch (Throwable t) {
@@ -334,59 +1288,112 @@ public final class BoundEntityStorage {
                     entity.remove(Entity.RemovalReason.DISCARDED);
                 } catch (Throwable ignored) {}
             }
-            originalsToDelete.remove(id);
-            snapshots.remove(id);
+            // only a shard it is already indexed under; never assign one to a row going away
+            String key = shardKeyOf(id);
+            SnapshotShard shard = key != null ? shards.get(key) : null;
+            entries.remove(id);
+            offlineRiders.remove(id);
             originalToRecreated.remove(id);
-            withOfflinePlayer.remove(id);
-            markDirty();
+            if (shard != null) shard.members.remove(id);
+            markDirty(shard, record("delete", id));
+            markGlobalDirty(record("delete", id));
+            storeRemovals.add(id);
         }
     }
 
+    /**
+     * A loaded horse crossed a chunk section boundary (see EntityPositionMixin). Updates the
+     * stored location in place and pushes it to whistle holders; the NBT is left to the
+     * consistency sweep and the unload capture.
+     */
+    public static void onEntityMoved(Entity entity, ServerWorld world) {
+        UUID id = entity.getUuid();
+        // not bound, or still being read from disk (ENTITY_LOAD marks it loaded)
+        if (!entries.has(id, BoundEntityTable.LOADED)) return;
+        updateLocation(id, world, entity.getBlockPos());
+    }
+
+    /**
+     * A horse moved to another dimension (ServerEntityWorldChangeEvents).
+     */
+    public static void onEntityChangedWorld(Entity entity, ServerWorld destination) {
+        UUID id = entity.getUuid();
+        if (!entries.has(id, BoundEntityTable.RESIDENT)) return;
+        entries.update(id, BoundEntityTable.LOADED, 0);
+        updateLocation(id, destination, entity.getBlockPos());
+    }
+
+    private static void updateLocation(UUID uuid, ServerWorld world, BlockPos pos) {
+        Identifier dim = world.getRegistryKey().getValue();
+        int dimId = StorageInterner.dimensionId(dim);
+        int meta = entries.meta(uuid);
+        if (pos.asLong() == entries.pos(uuid) && BoundEntityTable.dimensionOf(meta) == dimId) return;
+        entries.locate(uuid, dimId, pos.asLong(), 0, 0);
+        markDirty(shardFor(uuid, null), moveRecord(uuid, dim, pos, (meta & BoundEntityTable.LOADED) != 0));
+        syncHolders(world.getServer(), uuid, dim, pos);
+    }
+
     public static void markDead(UUID uuid) {
-        Snapshot s = snapshots.get(uuid);
-        if (s != null) s.dead = true;
-        else {
-            Snapshot ns = new Snapshot(new NbtCompound(), Identifier.tryParse("minecraft:overworld"), BlockPos.ORIGIN);
-            ns.dead = true;
-            snapshots.put(uuid, ns);
-        }
-        markDirty();
+        SnapshotShard shard = shardFor(uuid, null);
+        if (entries.has(uuid, BoundEntityTable.RESIDENT)) entries.update(uuid, BoundEntityTable.DEAD, 0);
+        else putDeadPlaceholder(uuid);
+        markDirty(shard, record("dead", uuid));
     }
 
     public static boolean isDead(UUID uuid) {
-        Snapshot s = snapshots.get(uuid);
-        return s != null && s.dead;
+        return entries.has(uuid, BoundEntityTable.DEAD);
     }
 
     public static boolean isBound(UUID uuid) {
-        return snapshots.containsKey(uuid);
-    }
-
-    public static void markWithOfflinePlayer(UUID uuid, String playerName) {
-        withOfflinePlayer.put(uuid, playerName);
-        markDirty();
-    }
-	
-	/**
-	 * Clear any offline-player markers that reference the given player name.
-	 * Called when a player rejoins so the "Ridden by (offline): <name>" tooltip can be cleared.
-	 */
-	public static void clearOfflineForPlayerName(String playerName) {
-		if (playerName == null) return;
-		boolean changed = false;
-		Iterator<Map.Entry<UUID, String>> it = withOfflinePlayer.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry<UUID, String> e = it.next();
-			if (playerName.equals(e.getValue())) {
-				it.remove();
-				changed = true;
-			}
-		}
-		if (changed) markDirty();
-	}
+        return entries.has(uuid, BoundEntityTable.RESIDENT) || entries.shard(uuid) != 0;
+    }
+
+    public static void markWithOfflinePlayer(UUID uuid, UUID player, String playerName) {
+        SnapshotShard shard = shardFor(uuid, null);
+        setOffline(uuid, player, playerName);
+        markDirty(shard, offlineRecord(uuid, player, playerName));
+    }
+
+    /**
+     * Clear the offline-rider markers of a player who rejoined, so the "Ridden by (offline)"
+     * tooltip goes away. Only that player's horses are touched, through the reverse index;
+     * name-only markers from older saves are matched by name. A marker whose shard is not
+     * resident is cleared on the server thread once that shard is in (usually by the join
+     * prefetch), so the join never waits for the disk and the load can not bring the marker
+     * back afterwards.
+     */
+    public static void clearOfflineForPlayer(MinecraftServer server, UUID player, String playerName) {
+        for (UUID id : offlineRiders.horsesOf(player, playerName)) {
+            String key = shardKeyOf(id);
+            if (key == null || shards.containsKey(key)) {
+                clearOffline(id);
+                continue;
+            }
+            shardLoad(key, prefetcher).thenAccept(shard -> server.execute(() -> {
+                // still online: a logout in between may have marked the horse again
+                if (persistenceEnabled && server.getPlayerManager().getPlayer(player) != null) clearOffline(id);
+            }));
+        }
+    }
+
+    private static void clearOffline(UUID id) {
+        setOffline(id, null, null);
+        markDirty(shardFor(id, null), offlineRecord(id, null, null));
+    }
+
+    /** Table column (display name) and reverse index together; a null name clears. */
+    private static void setOffline(UUID id, UUID player, String playerName) {
+        if (playerName != null) {
+            entries.setOffline(id, StorageInterner.string(playerName));
+            offlineRiders.put(id, player, playerName);
+        } else {
+            entries.setOffline(id, null);
+            offlineRiders.remove(id);
+        }
+    }
 
     public static String getOfflinePlayerName(UUID uuid) {
-        return withOfflinePlayer.get(uuid);
+        return entries.offline(uuid);
     }
 
     /**
@@ -394,10 +1401,33 @@ public final class BoundEntityStorage {
      * Returns the new entity UUID or null on failure.
      */
     public static UUID recreateFromSnapshot(UUID originalUuid, ServerWorld targetWorld, double x, double y, double z, float yaw, float pitch) {
-        Snapshot s = snapshots.get(originalUuid);
-        if (s == null || s.nbt == null) return null;
+        return recreateFromSnapshot(originalUuid, null, targetWorld, x, y, z, yaw, pitch);
+    }
+
+    /**
+     * Same, preferring the given NBT (the copy read from vanilla entity storage) over the
+     * stored fallback when the original is not loaded anywhere.
+     */
+    public static UUID recreateFromSnapshot(UUID originalUuid, NbtCompound source, ServerWorld targetWorld, double x, double y, double z, float yaw, float pitch) {
+        long start = System.nanoTime();
+        ensureLoaded(originalUuid);
+        if (nbtOf(originalUuid) == null) return null;
+        Identifier originalDim = dimensionOf(originalUuid);
         try {
-            NbtCompound nbtCopy = s.nbt.copy();
+            // if the original is loaded somewhere, its live state beats a sweep-old snapshot
+            try {
+                MinecraftServer server = targetWorld.getServer();
+                ServerWorld liveWorld = worldFor(server, originalDim);
+                Entity live = liveWorld != null ? liveWorld.getEntity(originalUuid) : null;
+                if (live != null && live.isAlive()) {
+                    submitBaseline(originalUuid, captureFallback(live), null, null);
+                } else if (source != null) {
+                    submitBaseline(originalUuid, source, null, null);
+                }
+            } catch (Throwable ignored) {}
+
+            NbtCompound current = nbtOf(originalUuid);
+            NbtCompound nbtCopy = current.copy();
 
             // Remove UUID keys so the loader will give a fresh UUID
             nbtCopy.remove("UUID");
@@ -422,13 +1452,20 @@ public final class BoundEntityStorage {
 
             UUID newUuid = recreated.getUuid();
 
-            NbtCompound newNbt = new NbtCompound();
-            try {
-                recreated.saveNbt(newNbt);
-            } catch (Throwable ignored) {}
+            NbtCompound newNbt = captureFallback(recreated);
             Identifier newDim = targetWorld.getRegistryKey().getValue();
             BlockPos newPos = recreated.getBlockPos();
-            snapshots.put(newUuid, new Snapshot(newNbt, newDim, newPos));
+            // the recreated horse stays in the original's shard
+            SnapshotShard originalShard = shardFor(originalUuid, current);
+            String shardKey = originalShard != null ? originalShard.key : SnapshotShard.keyForOwner(ownerOf(newNbt));
+            if (persistenceEnabled) {
+                entries.setShard(newUuid, StorageInterner.shardId(shardKey));
+                markGlobalDirty(indexRecord(newUuid, shardKey));
+            }
+            SnapshotShard newShard = shardFor(newUuid, newNbt);
+            locateResident(newUuid, newDim, newPos, BoundEntityTable.LOADED);
+            entries.setTick(newUuid, targetWorld.getServer().getTicks());
+            submitBaseline(newUuid, newNbt, newShard, "store");
 
             // record mapping so that if the original loads later, we can quietly discard it
             originalToRecreated.put(originalUuid, newUuid);
@@ -436,9 +1473,8 @@ public final class BoundEntityStorage {
             // --- Attempt immediate removal of the original entity if it's currently loaded ---
             try {
                 MinecraftServer server = targetWorld.getServer();
-                if (s.dimension != null && server != null) {
-                    RegistryKey<World> originalWorldKey = RegistryKey.of(RegistryKeys.WORLD, s.dimension);
-                    ServerWorld originalWorld = server.getWorld(originalWorldKey);
+                if (originalDim != null && server != null) {
+                    ServerWorld originalWorld = worldFor(server, originalDim);
                     if (originalWorld != null) {
                         Entity originalEntity = originalWorld.getEntity(originalUuid);
                         if (originalEntity != null && originalEntity.isAlive()) {
@@ -449,135 +1485,223 @@ public final class BoundEntityStorage {
                                     originalEntity.remove(Entity.RemovalReason.DISCARDED);
                                 } catch (Throwable ignored) {}
                             }
-                            snapshots.remove(originalUuid);
+                            entries.release(originalUuid);
+                            entries.setShard(originalUuid, 0);
+                            if (originalShard != null) originalShard.members.remove(originalUuid);
                         } else {
-                            originalsToDelete.add(originalUuid);
+                            entries.update(originalUuid, BoundEntityTable.TO_DELETE, 0);
                         }
                     } else {
-                        originalsToDelete.add(originalUuid);
+                        entries.update(originalUuid, BoundEntityTable.TO_DELETE, 0);
                     }
                 } else {
-                    originalsToDelete.add(originalUuid);
+                    entries.update(originalUuid, BoundEntityTable.TO_DELETE, 0);
                 }
             } catch (Throwable t) {
-                originalsToDelete.add(originalUuid);
+                entries.update(originalUuid, BoundEntityTable.TO_DELETE, 0);
             }
 
-            markDirty();
+            markGlobalDirty(mappingRecord(originalUuid, newUuid));
+            if (entries.has(originalUuid, BoundEntityTable.TO_DELETE)) {
+                markGlobalDirty(record("tombstone", originalUuid));
+            } else {
+                markDirty(originalShard, record("drop", originalUuid));
+                markGlobalDirty(record("drop", originalUuid));
+                storeRemovals.add(originalUuid);
+            }
+            WhistleMetrics.RECREATE.recordSince(start);
             return newUuid;
         } catch (Throwable t) {
             return null;
         }
     }
 
+    /**
+     * Call every server tick: store-wide housekeeping (idle shard unloading). The sweep
+     * itself runs per world, see {@link #tickWorld(ServerWorld)}.
+     */
     public static void tick(MinecraftServer server) {
         if (server == null) return;
-        long tick = server.getTicks();
+        if (server.getTicks() % 100 == 0) unloadIdleShards(server);
+    }
 
-        for (Map.Entry<UUID, Snapshot> e : snapshots.entrySet()) {
-            UUID uuid = e.getKey();
-            Snapshot s = e.getValue();
+    /**
+     * Call at the end of every world tick. Position and dimension changes arrive as events
+     * ({@link #onEntityMoved}, {@link #onEntityChangedWorld}); what runs here is a slow
+     * consistency sweep over this world's partition that confirms where loaded entities are,
+     * catches anything the events missed and now and then re-captures the fallback NBT. The
+     * sweep is spread over the ticks by the partition's {@link RefreshScheduler}: every bound
+     * entity is visited about once per refresh period, but no single tick pays for the whole
+     * population.
+     */
+    public static void tickWorld(ServerWorld world) {
+        if (world == null) return;
+        long start = System.nanoTime();
+        long tick = world.getServer().getTicks();
+        DimensionPartition partition = partitionFor(world);
 
-			// NEW: handle server restarts (tick counter resets)
-			long diff = tick - s.lastUpdatedTick;
-			// Update if it's been >= 20 ticks OR if diff went negative (server restarted)
-			if (diff < 0 || diff < 20) continue;
-			s.lastUpdatedTick = tick;
+        partition.scheduler.run(tick, () -> entries.residentIn(partition.dimensionId) > 0
+                ? entries.residentKeys(partition.dimensionId) : List.of(), uuid -> refresh(partition, tick, uuid));
 
-            if (s.dimension == null) continue;
-            RegistryKey<World> worldKey = RegistryKey.of(RegistryKeys.WORLD, s.dimension);
-            ServerWorld w = server.getWorld(worldKey);
-            if (w == null) continue;
+        int processed = partition.scheduler.processedLastTick();
+        if (processed > 0) {
+            WhistleMetrics.REFRESH_PER_TICK.record(processed);
+            WhistleMetrics.REFRESHED.add(processed);
+            partition.refreshed.add(processed);
+        }
+        partition.tickTime.recordSince(start);
+        WhistleMetrics.TICK.recordSince(start);
+    }
 
-            Entity ent = w.getEntity(uuid);
-            if (ent instanceof AbstractHorseEntity || ent instanceof LivingEntity) {
-                try {
-                    NbtCompound nbt = new NbtCompound();
-                    ent.saveNbt(nbt);
-                    s.nbt = nbt;
-                    s.pos = ent.getBlockPos();
-                    s.loaded = true;
-                    s.dead = false;
-                    markDirty();
-					
-					// send sync packets to players holding a matching whistle
-					for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-						WhistleMod.LOGGER.info("[Whistle] checking player: {}", player.getName().getString());
-						for (int slot = 0; slot < player.getInventory().size(); slot++) {
-							ItemStack stack = player.getInventory().getStack(slot);
-							if (stack == null || stack.isEmpty()) continue;
-							if (!(stack.getItem() instanceof com.proxi.whistle.item.WhistleItem)) continue;
-
-							// Try component first
-							com.proxi.whistle.component.BoundHorseData comp =
-									stack.get(com.proxi.whistle.component.ModDataComponents.BOUND_HORSE_DATA);
-							UUID targetUuid = null;
-							if (comp != null) {
-								targetUuid = comp.uuid();
-								WhistleMod.LOGGER.info("[Whistle] player={} slot={} component UUID={}", player.getName().getString(), slot, targetUuid);
-							} else {
-								net.minecraft.nbt.NbtCompound root = com.proxi.whistle.util.ItemStackNbtUtil.getNbt(stack);
-								if (root != null && root.contains("WhistleBoundHorse") && root.get("WhistleBoundHorse") instanceof net.minecraft.nbt.NbtCompound) {
-									net.minecraft.nbt.NbtCompound bh = root.getCompound("WhistleBoundHorse");
-									UUID maybe = com.proxi.whistle.item.WhistleItem.readBoundUuid(bh);
-									if (maybe != null) {
-										targetUuid = maybe;
-										WhistleMod.LOGGER.info("[Whistle] player={} slot={} NBT UUID={}", player.getName().getString(), slot, targetUuid);
-									} else {
-										WhistleMod.LOGGER.info("[Whistle] player={} slot={} WhistleBoundHorse present but UUID parsing failed", player.getName().getString(), slot);
-									}
-								} else if (root != null && root.contains("BoundEntity") && root.get("BoundEntity") instanceof net.minecraft.nbt.NbtCompound) {
-									net.minecraft.nbt.NbtCompound bh = root.getCompound("BoundEntity");
-									UUID maybe = com.proxi.whistle.item.WhistleItem.readBoundUuid(bh);
-									if (maybe != null) {
-										targetUuid = maybe;
-										WhistleMod.LOGGER.info("[Whistle] player={} slot={} legacy BoundEntity NBT UUID={}", player.getName().getString(), slot, targetUuid);
-									} else {
-										WhistleMod.LOGGER.info("[Whistle] player={} slot={} BoundEntity present but UUID parsing failed", player.getName().getString(), slot);
-									}
-								} else {
-									WhistleMod.LOGGER.info("[Whistle] player={} slot={} no component and no WhistleBoundHorse/BoundEntity NBT", player.getName().getString(), slot);
-								}
-							}
-
-							// log our candidate match decision
-							if (targetUuid == null) {
-								// nothing matched for this stack
-								continue;
-							}
-
-							WhistleMod.LOGGER.info("[Whistle] comparing item uuid {} to snapshot uuid {}", targetUuid, uuid);
-							if (targetUuid.equals(uuid)) {
-								WhistleMod.LOGGER.info("[Whistle] SENDING horse-sync -> player={} slot={} uuid={}", player.getName().getString(), slot, uuid);
-								com.proxi.whistle.network.HorseSyncPayload payload =
-										new com.proxi.whistle.network.HorseSyncPayload(slot, uuid, s.dimension, s.pos);
-								try {
-									net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking.send(player, payload);
-								} catch (Throwable t) {
-									WhistleMod.LOGGER.warn("[Whistle] failed to send payload to {}: {}", player.getName().getString(), t.toString());
-								}
-							} else {
-								WhistleMod.LOGGER.info("[Whistle] uuid mismatch for player={} slot={} (item {}) != snapshot {}", player.getName().getString(), slot, targetUuid, uuid);
-							}
-						}
-					}
-                } catch (Throwable ignored) {}
-            } else {
-                s.loaded = false;
-            }
+    private static DimensionPartition partitionFor(ServerWorld world) {
+        DimensionPartition partition = partitions.get(world.getRegistryKey().getValue());
+        if (partition != null && partition.world == world) return partition;
+        // first tick of this world, or a new world object for it (integrated server restart)
+        DimensionPartition created = new DimensionPartition(world);
+        partitions.put(created.dimension, created);
+        String prefix = DimensionPartition.metricPrefix(created.dimension);
+        Identifier dim = created.dimension;
+        WhistleMetrics.gauge(prefix + "resident", () -> entries.residentIn(StorageInterner.dimensionId(dim)));
+        WhistleMetrics.gauge(prefix + "behindTicks", () -> {
+            DimensionPartition p = partitions.get(dim);
+            return p != null ? p.scheduler.behindTicks() : 0L;
+        });
+        return created;
+    }
+
+    /**
+     * The world of a dimension: the partition's reference once that world has ticked.
+     */
+    private static ServerWorld worldFor(MinecraftServer server, Identifier dim) {
+        if (dim == null) return null;
+        DimensionPartition partition = partitions.get(dim);
+        ServerWorld world = partition != null ? partition.world : null;
+        if (world != null && world.getServer() == server) return world;
+        return server != null ? server.getWorld(RegistryKey.of(RegistryKeys.WORLD, dim)) : null;
+    }
+
+    /**
+     * Ticks the snapshot refresh is currently behind its period (0 when keeping up), worst
+     * dimension.
+     */
+    public static long getRefreshBehindTicks() {
+        long behind = 0L;
+        for (DimensionPartition p : partitions.values()) behind = Math.max(behind, p.scheduler.behindTicks());
+        return behind;
+    }
+
+    private static long lastRefreshCycleTicks() {
+        long ticks = 0L;
+        for (DimensionPartition p : partitions.values()) ticks = Math.max(ticks, p.scheduler.lastCycleTicks());
+        return ticks;
+    }
+
+    private static void refresh(DimensionPartition partition, long tick, UUID uuid) {
+        int meta = entries.meta(uuid);
+        if ((meta & BoundEntityTable.RESIDENT) == 0) return;
+        // moved to another dimension since this cycle started: that partition has it now
+        if (BoundEntityTable.dimensionOf(meta) != partition.dimensionId) return;
+        ServerWorld w = partition.world;
+
+        Entity ent = w.getEntity(uuid);
+        if (ent instanceof AbstractHorseEntity || ent instanceof LivingEntity) {
+            try {
+                boolean wasLoaded = (meta & BoundEntityTable.LOADED) != 0;
+                BlockPos pos = ent.getBlockPos();
+                Identifier dim = partition.dimension;
+                boolean moved = pos.asLong() != entries.pos(uuid);
+                entries.locate(uuid, partition.dimensionId, pos.asLong(), BoundEntityTable.LOADED, BoundEntityTable.DEAD);
+                long lastUpdated = entries.tick(uuid);
+                if (lastUpdated == 0L) {
+                    lastUpdated = tick;
+                    entries.setTick(uuid, (int) tick);
+                }
+                if (tick - lastUpdated >= WhistleConfig.fallbackRefreshTicks) {
+                    // horses that never unload (spawn chunks, busy bases) still get a
+                    // reasonably recent fallback
+                    NbtCompound nbt = captureFallback(ent);
+                    entries.setTick(uuid, (int) tick);
+                    submitCapture(uuid, nbt, shardFor(uuid, nbt), "update");
+                } else if (moved || !wasLoaded) {
+                    // everything else is a locator update; vanilla keeps the entity itself
+                    markDirty(shardFor(uuid, null), moveRecord(uuid, dim, pos, true));
+                }
+
+                // also covers whistles picked up since the last location event
+                syncHolders(w.getServer(), uuid, dim, pos);
+            } catch (Throwable ignored) {}
+        } else {
+            entries.update(uuid, 0, BoundEntityTable.LOADED);
         }
     }
 
+    // transient state vanilla resets on load anyway; not worth keeping in the fallback
+    private static final String[] TRANSIENT_KEYS = {
+            "Brain", "Motion", "FallDistance", "Fire", "Air", "OnGround", "PortalCooldown",
+            "HurtTime", "HurtByTimestamp", "DeathTime", "FallFlying"
+    };
+
+    /**
+     * Fallback copy of an entity: its saved NBT minus transient state.
+     */
+    private static NbtCompound captureFallback(Entity entity) {
+        NbtCompound nbt = new NbtCompound();
+        try {
+            entity.saveNbt(nbt);
+        } catch (Throwable ignored) {}
+        for (String key : TRANSIENT_KEYS) nbt.remove(key);
+        return nbt;
+    }
+
+    /**
+     * Queue the current location for the players holding a matching whistle.
+     */
+    private static void syncHolders(MinecraftServer server, UUID uuid, Identifier dim, BlockPos pos) {
+        if (server == null) return;
+        HorseSyncBatcher.queue(uuid, dim, pos);
+    }
+
     public static BoundHorseData getLatestData(UUID uuid) {
-        Snapshot s = snapshots.get(uuid);
-        if (s == null) return null;
-        return new BoundHorseData(uuid, s.dimension, s.pos);
+        int meta = entries.meta(uuid);
+        if ((meta & BoundEntityTable.RESIDENT) == 0) return null;
+        return new BoundHorseData(uuid, StorageInterner.dimension(BoundEntityTable.dimensionOf(meta)), posOf(uuid));
     }
 
     public static NbtCompound getSnapshotNbt(UUID uuid) {
-        Snapshot s = snapshots.get(uuid);
-        if (s == null) return null;
-        return s.nbt != null ? s.nbt.copy() : null;
+        NbtCompound cold = readFolded(uuid);
+        if (cold != null) return cold;
+        ensureLoaded(uuid);
+        NbtCompound nbt = nbtOf(uuid);
+        return nbt != null ? nbt.copy() : null;
+    }
+
+    /**
+     * Snapshot of a horse whose shard is not resident, decoded straight from the snapshot
+     * store's mapping instead of loading the shard; null when that is not possible. Only
+     * shards with no journal to replay qualify: their snapshots in the store are current.
+     */
+    private static NbtCompound readFolded(UUID uuid) {
+        MappedSnapshotStore store = snapshotStore;
+        if (store == null || uuid == null || entries.has(uuid, BoundEntityTable.RESIDENT)) return null;
+        String key = shardKeyOf(uuid);
+        if (key == null || shards.containsKey(key) || !isFolded(key)) return null;
+        NbtCompound nbt = store.read(uuid, Encoded::decodeBlob);
+        if (nbt != null) WhistleMetrics.STORE_READS.increment();
+        return nbt;
+    }
+
+    private static boolean isFolded(String key) {
+        if (foldedShards.contains(key)) return true;
+        Path dir = storeDir;
+        if (dir == null) return false;
+        try {
+            Path log = dir.resolve(key + ".nbt.log");
+            if (Files.isRegularFile(log) && Files.size(log) > 0) return false;
+        } catch (IOException e) {
+            return false;
+        }
+        foldedShards.add(key);
+        return true;
     }
 
     public static UUID getRecreatedForOriginal(UUID original) {
@@ -585,14 +1709,17 @@ public final class BoundEntityStorage {
     }
 
     public static boolean isOriginalToDelete(UUID uuid) {
-        return originalsToDelete.contains(uuid);
+        return entries.has(uuid, BoundEntityTable.TO_DELETE);
     }
 
     public static void remove(UUID uuid) {
-        snapshots.remove(uuid);
-        withOfflinePlayer.remove(uuid);
-        originalsToDelete.remove(uuid);
+        SnapshotShard shard = shardFor(uuid, null);
+        entries.remove(uuid);
+        offlineRiders.remove(uuid);
         originalToRecreated.remove(uuid);
-        markDirty();
+        if (shard != null) shard.members.remove(uuid);
+        markDirty(shard, record("delete", uuid));
+        markGlobalDirty(record("delete", uuid));
+        storeRemovals.add(uuid);
     }
 }
@@ -0,0 +1,556 @@
+package com.proxi.whistle.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * BoundEntityTable
+ *
+ * Everything the store keeps per horse, in one open-addressing table keyed by the two longs
+ * of the horse's UUID (linear probing, backward-shift deletion, so there are no tombstones).
+ * Each slot is a row across parallel arrays:
+ *  meta   flag bits in the low 16 bits, the dimension id (StorageInterner) in the high 16
+ *  pos    the block position packed as BlockPos.asLong does
+ *  shard  id of the owning shard's key (StorageInterner), 0 = not indexed
+ *  tick   server tick of the last fallback capture, 0 = unknown
+ *  data   the encoded NBT of resident entries
+ *  offline name of the offline player riding it, when OFFLINE is set
+ * A row lives as long as any of RESIDENT / OFFLINE / TO_DELETE, a shard or data is left.
+ * Resident rows are counted per dimension id; a row's dimension is what partitions the store
+ * by world, so moving a horse to another dimension is a single write. The size of the data
+ * column (as the given measure counts it) is kept as a running total, overall and per shard,
+ * so the memory budget never has to walk the table.
+ *
+ * Writes take the write lock (server thread, journal replay, and the persistence writer
+ * dropping idle shards). Reads are optimistic and retried under the read lock when a write
+ * got in between; either way they allocate nothing.
+ */
+final class BoundEntityTable {
+    static final int USED = 1;
+    /** Belongs to a resident shard: data, locator and state are in memory. */
+    static final int RESIDENT = 1 << 1;
+    static final int LOADED = 1 << 2;
+    static final int DEAD = 1 << 3;
+    static final int OFFLINE = 1 << 4;
+    /** Original of a recreated horse, discarded when it loads. */
+    static final int TO_DELETE = 1 << 5;
+
+    private static final int FLAG_MASK = 0xFFFF;
+    private static final int DIM_SHIFT = 16;
+    private static final int KEEP = RESIDENT | OFFLINE | TO_DELETE;
+    private static final int MIN_CAPACITY = 64;
+
+    private static final int COL_META = 0;
+    private static final int COL_POS = 1;
+    private static final int COL_SHARD = 2;
+    private static final int COL_TICK = 3;
+
+    /** Arrays of one capacity; swapped as a whole on resize so a reader never mixes two. */
+    private static final class Columns {
+        final long[] hi;
+        final long[] lo;
+        final int[] meta;
+        final long[] pos;
+        final int[] shard;
+        final int[] tick;
+        final Object[] data;
+        final String[] offline;
+        final int mask;
+
+        Columns(int capacity) {
+            hi = new long[capacity];
+            lo = new long[capacity];
+            meta = new int[capacity];
+            pos = new long[capacity];
+            shard = new int[capacity];
+            tick = new int[capacity];
+            data = new Object[capacity];
+            offline = new String[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+    private final ToLongFunction<Object> measure;
+    private volatile Columns columns = new Columns(MIN_CAPACITY);
+    private volatile int size = 0;
+    // resident rows per dimension id; written under the write lock, read racily for stats
+    private volatile int[] residentByDimension = new int[8];
+    // measured data per shard id and in total; same rules
+    private volatile long[] dataBytesByShard = new long[64];
+    private volatile long dataBytes = 0L;
+
+    BoundEntityTable(ToLongFunction<Object> measure) {
+        this.measure = measure;
+    }
+
+    /** A table whose data is not measured. */
+    BoundEntityTable() {
+        this(data -> 0L);
+    }
+
+    // ---------- reads ----------
+
+    static int flagsOf(int meta) {
+        return meta & FLAG_MASK;
+    }
+
+    static int dimensionOf(int meta) {
+        return meta >>> DIM_SHIFT;
+    }
+
+    /** Flag bits and dimension id of the row, 0 when there is none. */
+    int meta(UUID id) {
+        return (int) readLong(id, COL_META, 0L);
+    }
+
+    boolean has(UUID id, int flag) {
+        return (meta(id) & flag) != 0;
+    }
+
+    boolean contains(UUID id) {
+        return meta(id) != 0;
+    }
+
+    long pos(UUID id) {
+        return readLong(id, COL_POS, 0L);
+    }
+
+    int shard(UUID id) {
+        return (int) readLong(id, COL_SHARD, 0L);
+    }
+
+    int tick(UUID id) {
+        return (int) readLong(id, COL_TICK, 0L);
+    }
+
+    Object data(UUID id) {
+        return readRef(id, false);
+    }
+
+    String offline(UUID id) {
+        return (String) readRef(id, true);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Resident rows in the given dimension. */
+    int residentIn(int dimension) {
+        int[] counts = residentByDimension;
+        return dimension < counts.length ? counts[dimension] : 0;
+    }
+
+    /** Resident rows of one dimension, for that partition's sweep. */
+    List<UUID> residentKeys(int dimension) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            List<UUID> keys = new ArrayList<>(residentIn(dimension));
+            for (int i = 0; i <= c.mask; i++) {
+                int m = c.meta[i];
+                if ((m & RESIDENT) != 0 && m >>> DIM_SHIFT == dimension) keys.add(new UUID(c.hi[i], c.lo[i]));
+            }
+            return keys;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Rows with the given flag set (every row for USED). For sweeps and export, not lookups. */
+    List<UUID> keys(int flag) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            List<UUID> keys = new ArrayList<>(flag == USED ? size : Math.min(size, 256));
+            for (int i = 0; i <= c.mask; i++) {
+                if ((c.meta[i] & flag) != 0) keys.add(new UUID(c.hi[i], c.lo[i]));
+            }
+            return keys;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Rows with the given flag set. Walks the table, so for stats only. */
+    int count(int flag) {
+        long stamp = lock.readLock();
+        try {
+            Columns c = columns;
+            int n = 0;
+            for (int i = 0; i <= c.mask; i++) {
+                if ((c.meta[i] & flag) != 0) n++;
+            }
+            return n;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Measured size of all data. */
+    long dataBytes() {
+        return dataBytes;
+    }
+
+    /** Measured size of the data of the rows indexed under a shard. */
+    long dataBytesIn(int shard) {
+        long[] bytes = dataBytesByShard;
+        return shard < bytes.length ? bytes[shard] : 0L;
+    }
+
+    private long readLong(UUID id, int column, long missing) {
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+        long stamp = lock.tryOptimisticRead();
+        long value = stamp != 0L ? readLong(columns, hi, lo, column, missing) : missing;
+        if (stamp == 0L || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = readLong(columns, hi, lo, column, missing);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    private static long readLong(Columns c, long hi, long lo, int column, long missing) {
+        int i = indexOf(c, hi, lo);
+        if (i < 0) return missing;
+        return switch (column) {
+            case COL_META -> c.meta[i];
+            case COL_POS -> c.pos[i];
+            case COL_SHARD -> c.shard[i];
+            default -> c.tick[i];
+        };
+    }
+
+    private Object readRef(UUID id, boolean offline) {
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+        long stamp = lock.tryOptimisticRead();
+        Object value = stamp != 0L ? readRef(columns, hi, lo, offline) : null;
+        if (stamp == 0L || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = readRef(columns, hi, lo, offline);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value;
+    }
+
+    private static Object readRef(Columns c, long hi, long lo, boolean offline) {
+        int i = indexOf(c, hi, lo);
+        if (i < 0) return null;
+        return offline ? c.offline[i] : c.data[i];
+    }
+
+    private static int indexOf(Columns c, long hi, long lo) {
+        int i = home(hi, lo, c.mask);
+        // bounded: an optimistic reader may look at a table mid-write
+        for (int probes = 0; probes <= c.mask; probes++) {
+            if (c.meta[i] == 0) return -1;
+            if (c.hi[i] == hi && c.lo[i] == lo) return i;
+            i = (i + 1) & c.mask;
+        }
+        return -1;
+    }
+
+    private static int home(long hi, long lo, int mask) {
+        // UUIDs are mostly random already; fold and mix so version bits do not cluster
+        long h = hi ^ Long.rotateLeft(lo, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    // ---------- writes ----------
+
+    /** Clear, then set flag bits; creates the row only when something is set. */
+    void update(UUID id, int set, int clear) {
+        long stamp = lock.writeLock();
+        try {
+            int i = set != 0 ? insert(id) : indexOf(columns, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i < 0) return;
+            Columns c = columns;
+            setMeta(c, i, c.meta[i] & ~clear | set | USED);
+            prune(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Dimension and position, plus flag changes in the same write. */
+    void locate(UUID id, int dimension, long pos, int set, int clear) {
+        long stamp = lock.writeLock();
+        try {
+            int i = insert(id);
+            Columns c = columns;
+            int flags = (c.meta[i] & ~clear | set) & FLAG_MASK | USED;
+            setMeta(c, i, flags | dimension << DIM_SHIFT);
+            c.pos[i] = pos;
+            prune(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setData(UUID id, Object data) {
+        long stamp = lock.writeLock();
+        try {
+            int i = data != null ? insert(id) : indexOf(columns, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i < 0) return;
+            Columns c = columns;
+            measure(c, i, -1);
+            c.data[i] = data;
+            measure(c, i, 1);
+            prune(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Swap the data of a row that is still resident; false (and nothing written) when the
+     * row was released or removed in the meantime.
+     */
+    boolean replaceData(UUID id, Object data) {
+        long stamp = lock.writeLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i < 0 || (c.meta[i] & RESIDENT) == 0) return false;
+            measure(c, i, -1);
+            c.data[i] = data;
+            measure(c, i, 1);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setShard(UUID id, int shard) {
+        long stamp = lock.writeLock();
+        try {
+            int i = shard != 0 ? insert(id) : indexOf(columns, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i < 0) return;
+            Columns c = columns;
+            measure(c, i, -1);
+            c.shard[i] = shard;
+            measure(c, i, 1);
+            prune(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Index a horse under a shard unless it already has one; returns the shard it ends up in. */
+    int setShardIfAbsent(UUID id, int shard) {
+        long stamp = lock.writeLock();
+        try {
+            int i = insert(id);
+            Columns c = columns;
+            if (c.shard[i] == 0) {
+                measure(c, i, -1);
+                c.shard[i] = shard;
+                measure(c, i, 1);
+            }
+            int result = c.shard[i];
+            prune(c, i);
+            return result;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setTick(UUID id, int tick) {
+        long stamp = lock.writeLock();
+        try {
+            int i = indexOf(columns, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i >= 0) columns.tick[i] = tick;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** Offline rider's name; null clears the marker. */
+    void setOffline(UUID id, String name) {
+        long stamp = lock.writeLock();
+        try {
+            int i = name != null ? insert(id) : indexOf(columns, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i < 0) return;
+            Columns c = columns;
+            c.offline[i] = name;
+            setMeta(c, i, name != null ? c.meta[i] | OFFLINE : c.meta[i] & ~OFFLINE);
+            prune(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Forget the resident part of a row (its shard was unloaded): data, locator and state
+     * go, the shard index, offline marker and a pending tombstone stay (the tooltip shows
+     * the offline rider without loading the shard).
+     */
+    void release(UUID id) {
+        long stamp = lock.writeLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i < 0) return;
+            setMeta(c, i, c.meta[i] & (TO_DELETE | OFFLINE) | USED);
+            c.pos[i] = 0L;
+            c.tick[i] = 0;
+            measure(c, i, -1);
+            c.data[i] = null;
+            prune(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void remove(UUID id) {
+        long stamp = lock.writeLock();
+        try {
+            Columns c = columns;
+            int i = indexOf(c, id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (i >= 0) removeAt(c, i);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            columns = new Columns(MIN_CAPACITY);
+            size = 0;
+            residentByDimension = new int[8];
+            dataBytesByShard = new long[64];
+            dataBytes = 0L;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // write lock held
+    private int insert(UUID id) {
+        long hi = id.getMostSignificantBits();
+        long lo = id.getLeastSignificantBits();
+        Columns c = columns;
+        int i = indexOf(c, hi, lo);
+        if (i >= 0) return i;
+        // keep at least a quarter of the slots empty so probes stay short
+        if ((size + 1) * 4L > (c.mask + 1) * 3L) {
+            c = resize(c, (c.mask + 1) * 2);
+        }
+        i = home(hi, lo, c.mask);
+        while (c.meta[i] != 0) i = (i + 1) & c.mask;
+        c.hi[i] = hi;
+        c.lo[i] = lo;
+        c.meta[i] = USED;
+        size++;
+        return i;
+    }
+
+    // write lock held; every change of an existing row's meta goes through here
+    private void setMeta(Columns c, int i, int meta) {
+        count(c.meta[i], -1);
+        c.meta[i] = meta;
+        count(meta, 1);
+    }
+
+    private void count(int meta, int delta) {
+        if ((meta & RESIDENT) == 0) return;
+        int dimension = meta >>> DIM_SHIFT;
+        int[] counts = residentByDimension;
+        if (dimension >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(dimension + 1, counts.length * 2));
+            residentByDimension = counts;
+        }
+        counts[dimension] += delta;
+    }
+
+    // write lock held; call with -1 before and 1 after changing a row's data or shard
+    private void measure(Columns c, int i, int sign) {
+        Object data = c.data[i];
+        if (data == null) return;
+        long bytes = sign * measure.applyAsLong(data);
+        int shard = c.shard[i];
+        long[] totals = dataBytesByShard;
+        if (shard >= totals.length) {
+            totals = Arrays.copyOf(totals, Math.max(shard + 1, totals.length * 2));
+            dataBytesByShard = totals;
+        }
+        totals[shard] += bytes;
+        dataBytes += bytes;
+    }
+
+    // write lock held; drops the row once nothing in it is worth keeping
+    private void prune(Columns c, int i) {
+        if ((c.meta[i] & KEEP) == 0 && c.shard[i] == 0 && c.data[i] == null) removeAt(c, i);
+    }
+
+    // write lock held; shifts later members of the probe run back so no tombstone is needed
+    private void removeAt(Columns c, int i) {
+        count(c.meta[i], -1);
+        measure(c, i, -1);
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & c.mask;
+            if (c.meta[j] == 0) break;
+            int home = home(c.hi[j], c.lo[j], c.mask);
+            // j may move into the hole only if its home is not cyclically within (hole, j]
+            boolean stays = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+            if (stays) continue;
+            copy(c, j, c, hole);
+            hole = j;
+        }
+        clearSlot(c, hole);
+        size--;
+    }
+
+    private Columns resize(Columns old, int capacity) {
+        Columns c = new Columns(capacity);
+        for (int i = 0; i <= old.mask; i++) {
+            if (old.meta[i] == 0) continue;
+            int j = home(old.hi[i], old.lo[i], c.mask);
+            while (c.meta[j] != 0) j = (j + 1) & c.mask;
+            copy(old, i, c, j);
+        }
+        columns = c;
+        return c;
+    }
+
+    private static void copy(Columns from, int i, Columns to, int j) {
+        to.hi[j] = from.hi[i];
+        to.lo[j] = from.lo[i];
+        to.meta[j] = from.meta[i];
+        to.pos[j] = from.pos[i];
+        to.shard[j] = from.shard[i];
+        to.tick[j] = from.tick[i];
+        to.data[j] = from.data[i];
+        to.offline[j] = from.offline[i];
+    }
+
+    private static void clearSlot(Columns c, int i) {
+        c.hi[i] = 0L;
+        c.lo[i] = 0L;
+        c.meta[i] = 0;
+        c.pos[i] = 0L;
+        c.shard[i] = 0;
+        c.tick[i] = 0;
+        c.data[i] = null;
+        c.offline[i] = null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.config.WhistleConfig;
+import net.minecraft.nbt.NbtCompound;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * DecodedSnapshotCache
+ *
+ * Small LRU of recently decoded snapshot trees, so a summon that reads the same snapshot a
+ * few times in a row (checks, recreate, shard lookup) decodes it once, and a capture can be
+ * diffed against the previous one without decoding baseline and delta chain again. Keyed by
+ * the newest encoded array of the state (baseline or last delta): arrays compare by
+ * identity and every change adds a new one, so a stale tree is never hit again and ages out.
+ *
+ * Cached trees are shared: callers must treat them as read-only and copy before mutating.
+ */
+final class DecodedSnapshotCache {
+    private DecodedSnapshotCache() {}
+
+    private static final Map<byte[], NbtCompound> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<byte[], NbtCompound> eldest) {
+            return size() > WhistleConfig.decodedCacheSize;
+        }
+    };
+    private static long hits = 0L;
+    private static long misses = 0L;
+
+    static NbtCompound get(byte[] data) {
+        return get(data, () -> SnapshotCodec.decode(data));
+    }
+
+    /**
+     * Tree cached under key, or decode() it and cache it.
+     */
+    static NbtCompound get(byte[] key, Supplier<NbtCompound> decode) {
+        if (key == null) return null;
+        synchronized (cache) {
+            NbtCompound hit = cache.get(key);
+            if (hit != null) {
+                hits++;
+                return hit;
+            }
+            misses++;
+        }
+        // decode outside the lock; a concurrent miss on the same array just decodes twice
+        NbtCompound decoded = decode.get();
+        put(key, decoded);
+        return decoded;
+    }
+
+    /**
+     * Cache a tree known to match key (a fresh capture that was just encoded).
+     */
+    static void put(byte[] key, NbtCompound tree) {
+        synchronized (cache) {
+            cache.put(key, tree);
+        }
+    }
+
+    static void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    static long hits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    static long misses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+}
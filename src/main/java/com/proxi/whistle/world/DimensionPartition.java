@@ -0,0 +1,41 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.config.WhistleConfig;
+import com.proxi.whistle.metrics.WhistleMetrics;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+
+/**
+ * DimensionPartition
+ *
+ * The bound horses of one dimension, as seen by the consistency sweep. Membership is the
+ * dimension id in each horse's BoundEntityTable row, so a horse that changes dimension
+ * leaves one partition and joins the other in a single write. What the partition adds is
+ * per-world state: a direct reference to its ServerWorld, its own RefreshScheduler (driven
+ * from that world's END_WORLD_TICK, so a quiet dimension costs next to nothing and never
+ * waits behind a busy one) and its own metrics under storage.dim.<namespace>.<path>.
+ *
+ * Server thread only, apart from the gauges.
+ */
+final class DimensionPartition {
+    final Identifier dimension;
+    final int dimensionId;
+    final RefreshScheduler scheduler = new RefreshScheduler(
+            WhistleConfig.refreshPeriodTicks, WhistleConfig.refreshBudgetMicros * 1_000L);
+    final WhistleMetrics.Histogram tickTime;
+    final WhistleMetrics.Counter refreshed;
+    volatile ServerWorld world;
+
+    DimensionPartition(ServerWorld world) {
+        this.world = world;
+        this.dimension = world.getRegistryKey().getValue();
+        this.dimensionId = StorageInterner.dimensionId(dimension);
+        String prefix = metricPrefix(dimension);
+        this.tickTime = WhistleMetrics.histogram(prefix + "tick");
+        this.refreshed = WhistleMetrics.counter(prefix + "refreshed");
+    }
+
+    static String metricPrefix(Identifier dimension) {
+        return "storage.dim." + dimension.getNamespace() + "." + dimension.getPath().replace('/', '.') + ".";
+    }
+}
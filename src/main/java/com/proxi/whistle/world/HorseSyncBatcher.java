@@ -0,0 +1,267 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+import com.proxi.whistle.component.BoundHorseData;
+import com.proxi.whistle.config.WhistleConfig;
+import com.proxi.whistle.metrics.WhistleMetrics;
+import com.proxi.whistle.network.HorseSubscribePayload;
+import com.proxi.whistle.network.HorseSyncBatchPayload;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * HorseSyncBatcher
+ *
+ * Collects horse locations reported by the storage (location events and the consistency
+ * sweep) and delivers them to whistle holders once per flush window, as one
+ * HorseSyncBatchPayload per player. Per player it remembers the last location sent for each
+ * horse and leaves out entries that have not changed since; the play connection is reliable
+ * and ordered, so what was sent is what the client has. Players whose batches come out
+ * identical (typically several players sharing one horse) get the same payload instance,
+ * whose body is encoded once.
+ *
+ * Clients declare which of their horses they actually show, and how fresh they want them,
+ * with a HorseSubscribePayload. From then on only those horses are sent to that player, each
+ * at most once per requested interval; a change that arrives too early is parked and goes out
+ * when the interval is up. Clients that never declare anything get every horse they hold a
+ * whistle for, once per flush window.
+ *
+ * Server thread only.
+ */
+public final class HorseSyncBatcher {
+    private HorseSyncBatcher() {}
+
+    /** Longest interval a client may ask for; anything slower is the consistency sweep's job. */
+    private static final int MAX_INTERVAL_TICKS = 1200;
+
+    private record Location(Identifier dimension, long pos) {}
+
+    /**
+     * What one connected player has been sent and wants.
+     */
+    private static final class Viewer {
+        // horse -> last location sent
+        final Map<UUID, Location> sent = new HashMap<>();
+        // horse -> requested interval in ticks; null until the client declares anything
+        Map<UUID, Integer> interest;
+        // horse -> earliest tick of the next update
+        final Map<UUID, Long> due = new HashMap<>();
+        // horses that changed before they were due
+        final Set<UUID> parked = new HashSet<>();
+    }
+
+    // horses reported since the last flush -> latest location, null to read it from the storage
+    // at flush time; insertion order keeps the entry order the same for every player, which is
+    // what lets equal batches be shared
+    private static final Map<UUID, Location> pending = new LinkedHashMap<>();
+    private static final Map<UUID, Viewer> viewers = new HashMap<>();
+    private static long nextFlushTick;
+
+    /**
+     * Note a horse's current location; holders get it with the next flush if it differs
+     * from what they were sent last.
+     */
+    static void queue(UUID horse, Identifier dimension, BlockPos pos) {
+        if (WhistleHolderIndex.holders(horse).isEmpty()) return;
+        pending.put(horse, new Location(dimension, pos.asLong()));
+    }
+
+    public static void tick(MinecraftServer server) {
+        long now = server.getTicks();
+        if (now < nextFlushTick) return;
+        nextFlushTick = now + WhistleConfig.syncFlushTicks;
+        flush(server, now);
+    }
+
+    private static void flush(MinecraftServer server, long now) {
+        Map<UUID, List<HorseSyncBatchPayload.Entry>> batches = collect(now, BoundEntityStorage::getLatestData);
+        if (batches.isEmpty()) return;
+
+        Map<List<HorseSyncBatchPayload.Entry>, HorseSyncBatchPayload> shared = new HashMap<>();
+        for (Map.Entry<UUID, List<HorseSyncBatchPayload.Entry>> e : batches.entrySet()) {
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(e.getKey());
+            if (player == null) {
+                viewers.remove(e.getKey());
+                continue;
+            }
+            HorseSyncBatchPayload payload = shared.computeIfAbsent(e.getValue(), HorseSyncBatchPayload::of);
+            try {
+                ServerPlayNetworking.send(player, payload);
+                WhistleMetrics.SYNC_PACKETS.increment();
+                WhistleMetrics.SYNC_ENTRIES.add(payload.entries().size());
+                WhistleMetrics.SYNC_BYTES.add(payload.encoded().length);
+            } catch (Throwable t) {
+                // the client may not have it; make sure the next flush tries again
+                Viewer viewer = viewers.get(e.getKey());
+                if (viewer != null) {
+                    for (HorseSyncBatchPayload.Entry entry : e.getValue()) viewer.sent.remove(entry.uuid());
+                }
+                WhistleMod.LOGGER.warn("[Whistle] failed to send payload to {}: {}", player.getName().getString(), t.toString());
+            }
+        }
+        WhistleMetrics.SYNC_ENCODED.add(shared.size());
+    }
+
+    /**
+     * What goes to whom at this flush: player -> entries, in the order the horses were reported.
+     * Drains the pending locations and releases parked changes that are due. {@code latest}
+     * gives a horse's current location (null when unknown); it is asked for horses queued
+     * without one and for parked horses, whose queued location may be stale by now.
+     */
+    static Map<UUID, List<HorseSyncBatchPayload.Entry>> collect(long now, Function<UUID, BoundHorseData> latest) {
+        Map<UUID, List<HorseSyncBatchPayload.Entry>> batches = new HashMap<>();
+        for (Map.Entry<UUID, Location> e : pending.entrySet()) {
+            UUID horse = e.getKey();
+            Location loc = e.getValue();
+            if (loc == null) {
+                BoundHorseData data = latest.apply(horse);
+                if (data == null) continue;
+                loc = new Location(data.dimension(), data.pos().asLong());
+            }
+            HorseSyncBatchPayload.Entry entry = null;
+            for (WhistleHolderIndex.Holder holder : WhistleHolderIndex.holders(horse)) {
+                // also collapses several whistles of one player into a single entry
+                Viewer viewer = viewers.computeIfAbsent(holder.player(), k -> new Viewer());
+                if (!admit(viewer, horse, loc, now)) continue;
+                if (entry == null) entry = new HorseSyncBatchPayload.Entry(horse, loc.dimension(), BlockPos.fromLong(loc.pos()));
+                batches.computeIfAbsent(holder.player(), k -> new ArrayList<>()).add(entry);
+            }
+        }
+        pending.clear();
+
+        // parked changes whose interval is up; the location is read fresh
+        for (Map.Entry<UUID, Viewer> e : viewers.entrySet()) {
+            Viewer viewer = e.getValue();
+            if (viewer.parked.isEmpty()) continue;
+            for (Iterator<UUID> it = viewer.parked.iterator(); it.hasNext(); ) {
+                UUID horse = it.next();
+                Long due = viewer.due.get(horse);
+                if (due != null && now < due) continue;
+                it.remove();
+                BoundHorseData data = latest.apply(horse);
+                if (data == null || !holds(e.getKey(), horse)) continue;
+                Location loc = new Location(data.dimension(), data.pos().asLong());
+                if (!admit(viewer, horse, loc, now)) continue;
+                batches.computeIfAbsent(e.getKey(), k -> new ArrayList<>())
+                        .add(new HorseSyncBatchPayload.Entry(horse, loc.dimension(), data.pos()));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Whether this location goes to the viewer now; records it as sent if so. A change to a
+     * subscribed horse that is not due yet is parked instead.
+     */
+    private static boolean admit(Viewer viewer, UUID horse, Location loc, long now) {
+        if (viewer.interest != null) {
+            Integer interval = viewer.interest.get(horse);
+            if (interval == null) return false;
+            if (loc.equals(viewer.sent.get(horse))) return false;
+            Long due = viewer.due.get(horse);
+            if (due != null && now < due) {
+                viewer.parked.add(horse);
+                WhistleMetrics.SYNC_DEFERRED.increment();
+                return false;
+            }
+            viewer.due.put(horse, now + interval);
+        }
+        return !loc.equals(viewer.sent.put(horse, loc));
+    }
+
+    private static boolean holds(UUID player, UUID horse) {
+        for (WhistleHolderIndex.Holder holder : WhistleHolderIndex.holders(horse)) {
+            if (holder.player().equals(player)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Replace what a player's client wants to be kept up to date on. Horses that are new to
+     * the set get their current location with the next flush.
+     */
+    public static void subscribe(ServerPlayerEntity player, List<HorseSubscribePayload.Subscription> subscriptions) {
+        subscribe(player.getUuid(), player.getServer() != null ? player.getServer().getTicks() : 0L, subscriptions);
+    }
+
+    static void subscribe(UUID player, long now, List<HorseSubscribePayload.Subscription> subscriptions) {
+        Viewer viewer = viewers.computeIfAbsent(player, k -> new Viewer());
+        Map<UUID, Integer> previous = viewer.interest;
+        Map<UUID, Integer> next = new HashMap<>();
+        for (HorseSubscribePayload.Subscription s : subscriptions) {
+            int interval = Math.max(1, Math.min(MAX_INTERVAL_TICKS, s.intervalTicks()));
+            next.merge(s.horse(), interval, Math::min);
+        }
+        viewer.interest = next;
+        for (Map.Entry<UUID, Integer> e : next.entrySet()) {
+            UUID horse = e.getKey();
+            if (previous == null || !previous.containsKey(horse)) {
+                viewer.sent.remove(horse);
+                viewer.due.remove(horse);
+                queueLatest(horse);
+            } else {
+                // asked for it fresher than before: do not keep waiting out the old interval
+                viewer.due.computeIfPresent(horse, (k, due) -> Math.min(due, now + e.getValue()));
+            }
+        }
+        // what is not shown is forgotten; showing it again sends it again
+        viewer.sent.keySet().retainAll(next.keySet());
+        viewer.due.keySet().retainAll(next.keySet());
+        viewer.parked.retainAll(next.keySet());
+        WhistleMetrics.SYNC_SUBSCRIBE.increment();
+    }
+
+    /**
+     * A player just got a whistle for this horse into a slot (join, pickup, transfer); its
+     * stack may carry an older location than the one they were sent, so send the current one.
+     */
+    static void invalidate(UUID player, UUID horse) {
+        Viewer viewer = viewers.get(player);
+        if (viewer != null) viewer.sent.remove(horse);
+        queueLatest(horse);
+    }
+
+    // the location is looked up when the flush gets to it
+    private static void queueLatest(UUID horse) {
+        pending.put(horse, null);
+    }
+
+    /**
+     * Forget what a player was sent and asked for (disconnect); on rejoin everything goes out again.
+     */
+    public static void forget(UUID player) {
+        viewers.remove(player);
+    }
+
+    public static void clear() {
+        pending.clear();
+        viewers.clear();
+        nextFlushTick = 0;
+    }
+
+    public static int pendingCount() {
+        return pending.size();
+    }
+
+    public static int subscriptionCount() {
+        int n = 0;
+        for (Viewer viewer : viewers.values()) {
+            if (viewer.interest != null) n += viewer.interest.size();
+        }
+        return n;
+    }
+}
@@ -0,0 +1,527 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+import com.proxi.whistle.metrics.WhistleMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * MappedSnapshotStore
+ *
+ * One memory-mapped file (data/whistle/snapshots.dat) holding the encoded snapshot of every
+ * horse, so shard base files only carry the small locators and a compaction writes just the
+ * snapshots that changed, a few pages each. Layout:
+ *  - header page: magic, version, index capacity
+ *  - index region: one 64-byte entry per horse, [long msb][long lsb][version A][version B],
+ *    a version being [int seq][int length][long offset][int blob crc][int crc]
+ *  - blob region: slots of power-of-two sizes (MIN_SLOT_SHIFT and up) with the bytes as given,
+ *    taken best-fit from the free ranges between them
+ *
+ * Crash safety: a slot is never written while an index entry points at it. put() copies the
+ * bytes into a free slot; commit() forces them to disk, writes the entry's older version
+ * (seq + 1, crc over key and version), forces that and only then hands the previous slot
+ * back for reuse. An entry whose newer version was torn by a crash falls back to the other
+ * one, whose slot is still intact. Free space is not persisted; open() derives it from the
+ * index. Freed ranges merge with free neighbours, and one that reaches the end of the used
+ * region shrinks it, so churn does not leave the file in pieces.
+ *
+ * When the index is full it doubles in place: the slots in the way are moved to the end
+ * (published like any update), then the new entries are zeroed and the header takes the
+ * new capacity. The file is never replaced, so this also works while it is mapped on
+ * platforms that refuse to replace a mapped file.
+ *
+ * read() hands its callback a read-only view of the mapping, no copy; the view is only
+ * valid inside the callback, since the slot may be reused once the read lock is released.
+ *
+ * Threading: put, remove and commit are synchronized and meant for the persistence writer
+ * (or the server thread once the writer stopped); read is safe from any thread.
+ */
+final class MappedSnapshotStore {
+    private static final int MAGIC = 0x5748534D; // "WHSM"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4096;
+    private static final int ENTRY_BYTES = 64;
+    private static final int KEY_BYTES = 16;
+    private static final int VERSION_BYTES = 24;
+    private static final int INITIAL_ENTRIES = 4096;
+    private static final int MIN_SLOT_SHIFT = 8;
+    // same limit as a journal record
+    private static final int MAX_SLOT_SHIFT = 26;
+    // a single mapping can not be larger
+    private static final long MAX_FILE_BYTES = Integer.MAX_VALUE;
+    private static final long GROW_STEP = 1L << 20;
+
+    /** A free range of the blob region. */
+    private record Extent(long offset, long length) {}
+
+    /** A committed (or staged) version of an entry. */
+    private record Slot(int entry, int half, int seq, long offset, int length, int blobCrc) {
+        int capacity() {
+            return 1 << shiftFor(length);
+        }
+    }
+
+    private final Path file;
+    private final StampedLock lock = new StampedLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer map;
+    private int capacity;
+    private long blobStart;
+    // first byte past the last slot in use
+    private long end;
+    private volatile long freeBytes;
+
+    // guarded by lock; what read() sees
+    private final Map<UUID, Slot> slots = new HashMap<>();
+    // writer side only
+    private final ArrayDeque<Integer> freeEntries = new ArrayDeque<>();
+    // free ranges below end, merged with their neighbours: by offset, and by size for best fit
+    private final TreeMap<Long, Extent> freeByOffset = new TreeMap<>();
+    private final TreeSet<Extent> freeBySize = new TreeSet<>(
+            Comparator.comparingLong(Extent::length).thenComparingLong(Extent::offset));
+    // written but not published yet; a null slot is a removal
+    private final Map<UUID, Slot> staged = new LinkedHashMap<>();
+    // index entries a staged slot claimed
+    private final Map<UUID, Integer> claimed = new HashMap<>();
+
+    private final int initialEntries;
+
+    private MappedSnapshotStore(Path file, int initialEntries) {
+        this.file = file;
+        this.initialEntries = initialEntries;
+    }
+
+    /**
+     * Open or create the store. A file that is not a store (or unreadable) is moved aside to
+     * *.corrupt and a new one created in its place.
+     */
+    static MappedSnapshotStore open(Path file) throws IOException {
+        return open(file, INITIAL_ENTRIES);
+    }
+
+    /** initialEntries only applies to a new file; small values let tests reach a grow. */
+    static MappedSnapshotStore open(Path file, int initialEntries) throws IOException {
+        MappedSnapshotStore store = new MappedSnapshotStore(file, Math.max(1, initialEntries));
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            WhistleMod.LOGGER.warn("[Whistle] {} is unreadable, moving it aside", file.getFileName(), e);
+            store.closeChannel();
+            Files.move(file, file.resolveSibling(file.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            store.load();
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        slots.clear();
+        freeEntries.clear();
+        freeByOffset.clear();
+        freeBySize.clear();
+        freeBytes = 0;
+        boolean fresh = !Files.isRegularFile(file) || Files.size(file) < HEADER_BYTES;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (fresh) {
+            capacity = initialEntries;
+            blobStart = HEADER_BYTES + (long) capacity * ENTRY_BYTES;
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, blobStart);
+            writeHeader(map, capacity);
+            map.force();
+        } else {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (map.getInt(0) != MAGIC) throw new IOException("not a snapshot store");
+            if (map.getInt(4) != VERSION) throw new IOException("unsupported snapshot store version " + map.getInt(4));
+            capacity = map.getInt(8);
+            blobStart = HEADER_BYTES + (long) capacity * ENTRY_BYTES;
+            if (capacity <= 0 || blobStart > map.capacity()) throw new IOException("truncated snapshot store");
+        }
+        scan();
+    }
+
+    private static void writeHeader(ByteBuffer buf, int capacity) {
+        buf.putInt(0, MAGIC);
+        buf.putInt(4, VERSION);
+        buf.putInt(8, capacity);
+    }
+
+    /** Rebuild the in-memory index and the free lists from the index region. */
+    private void scan() {
+        for (int i = 0; i < capacity; i++) {
+            int base = HEADER_BYTES + i * ENTRY_BYTES;
+            Slot a = readVersion(i, 0);
+            Slot b = readVersion(i, 1);
+            Slot newest = a == null ? b : b == null || a.seq() > b.seq() ? a : b;
+            if (newest == null || newest.length() == 0
+                    || newest.offset() < blobStart || newest.offset() + newest.capacity() > map.capacity()) {
+                freeEntries.add(i);
+                continue;
+            }
+            UUID id = new UUID(map.getLong(base), map.getLong(base + 8));
+            if (slots.putIfAbsent(id, newest) != null) freeEntries.add(i);
+        }
+        List<Slot> live = new ArrayList<>(slots.values());
+        live.sort(Comparator.comparingLong(Slot::offset));
+        long cursor = blobStart;
+        end = blobStart;
+        for (Slot s : live) {
+            end = Math.max(end, s.offset() + s.capacity());
+            if (s.offset() > cursor) release(cursor, s.offset() - cursor);
+            cursor = Math.max(cursor, s.offset() + s.capacity());
+        }
+    }
+
+    /** One version of an entry, or null if it was never written or is torn. */
+    private Slot readVersion(int entry, int half) {
+        int base = HEADER_BYTES + entry * ENTRY_BYTES;
+        int at = base + KEY_BYTES + half * VERSION_BYTES;
+        int seq = map.getInt(at);
+        if (seq == 0) return null;
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(base, KEY_BYTES));
+        crc.update(map.slice(at, VERSION_BYTES - 4));
+        if ((int) crc.getValue() != map.getInt(at + 20)) return null;
+        return new Slot(entry, half, seq, map.getLong(at + 8), map.getInt(at + 4), map.getInt(at + 16));
+    }
+
+    private void writeVersion(UUID id, Slot s) {
+        int base = HEADER_BYTES + s.entry() * ENTRY_BYTES;
+        int at = base + KEY_BYTES + s.half() * VERSION_BYTES;
+        map.putLong(base, id.getMostSignificantBits());
+        map.putLong(base + 8, id.getLeastSignificantBits());
+        map.putInt(at, s.seq());
+        map.putInt(at + 4, s.length());
+        map.putLong(at + 8, s.offset());
+        map.putInt(at + 16, s.blobCrc());
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(base, KEY_BYTES));
+        crc.update(map.slice(at, VERSION_BYTES - 4));
+        map.putInt(at + 20, (int) crc.getValue());
+    }
+
+    /**
+     * Run reader on a read-only view of the horse's bytes; null if the store does not have
+     * it or its bytes fail the checksum. The view must not escape the callback.
+     */
+    <T> T read(UUID id, Function<ByteBuffer, T> reader) {
+        long stamp = lock.readLock();
+        try {
+            Slot s = slots.get(id);
+            if (s == null) return null;
+            ByteBuffer view = map.slice((int) s.offset(), s.length()).asReadOnlyBuffer();
+            CRC32 crc = new CRC32();
+            crc.update(view.duplicate());
+            if ((int) crc.getValue() != s.blobCrc()) {
+                WhistleMod.LOGGER.warn("[Whistle] snapshot of {} in {} fails its checksum", id, file.getFileName());
+                return null;
+            }
+            return reader.apply(view);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Stage the horse's bytes. read() keeps returning the committed version until the next
+     * commit() makes these durable and visible. Bytes equal to what is committed already are
+     * skipped.
+     */
+    synchronized void put(UUID id, byte[] bytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        int blobCrc = (int) crc.getValue();
+        Slot current = committed(id);
+        if (!staged.containsKey(id) && current != null && current.length() == bytes.length && current.blobCrc() == blobCrc) return;
+        if (bytes.length == 0 || shiftFor(bytes.length) > MAX_SLOT_SHIFT) throw new IOException("snapshot of " + bytes.length + " bytes");
+
+        int entry;
+        if (current != null) {
+            entry = current.entry();
+        } else {
+            Integer taken = claimed.get(id);
+            if (taken == null) {
+                if (freeEntries.isEmpty()) {
+                    // publish what is staged, then make room; moving slots only handles committed ones
+                    commit();
+                    growIndex();
+                }
+                taken = freeEntries.poll();
+                claimed.put(id, taken);
+            }
+            entry = taken;
+        }
+        long offset = allocate(1L << shiftFor(bytes.length));
+        map.put((int) offset, bytes);
+        Slot next = current != null
+                ? new Slot(entry, 1 - current.half(), current.seq() + 1, offset, bytes.length, blobCrc)
+                : claim(entry, offset, bytes.length, blobCrc);
+        Slot replaced = staged.put(id, next);
+        // never published, nobody can be reading it
+        if (replaced != null) release(replaced.offset(), replaced.capacity());
+        WhistleMetrics.STORE_WRITES.increment();
+        WhistleMetrics.BYTES_WRITTEN.add(bytes.length);
+    }
+
+    /** Stage dropping the horse. */
+    synchronized void remove(UUID id) {
+        Slot replaced = staged.remove(id);
+        if (replaced != null) release(replaced.offset(), replaced.capacity());
+        if (committed(id) != null) {
+            staged.put(id, null);
+        } else {
+            Integer entry = claimed.remove(id);
+            if (entry != null) freeEntries.add(entry);
+        }
+    }
+
+    /**
+     * Make everything staged durable and visible: blobs first, then their index entries,
+     * and only then free the slots they replace.
+     */
+    synchronized void commit() throws IOException {
+        if (staged.isEmpty()) return;
+        try {
+            map.force();
+            List<Slot> freed = new ArrayList<>();
+            for (Map.Entry<UUID, Slot> e : staged.entrySet()) {
+                Slot next = e.getValue();
+                Slot current = committed(e.getKey());
+                if (next == null) {
+                    // a tombstone version: length 0
+                    writeVersion(e.getKey(), new Slot(current.entry(), 1 - current.half(), current.seq() + 1, 0L, 0, 0));
+                } else {
+                    writeVersion(e.getKey(), next);
+                }
+                if (current != null) freed.add(current);
+            }
+            map.force();
+
+            long stamp = lock.writeLock();
+            try {
+                for (Map.Entry<UUID, Slot> e : staged.entrySet()) {
+                    if (e.getValue() != null) slots.put(e.getKey(), e.getValue());
+                    else freeEntries.add(slots.remove(e.getKey()).entry());
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            for (Slot s : freed) release(s.offset(), s.capacity());
+        } finally {
+            staged.clear();
+            claimed.clear();
+        }
+    }
+
+    /**
+     * First version in a free entry. It goes over the older of the two versions left there
+     * and continues their sequence, so a stale version (possibly of the same horse) can
+     * never win over it, and a torn write falls back to the newest previous state.
+     */
+    private Slot claim(int entry, long offset, int length, int blobCrc) {
+        int at = HEADER_BYTES + entry * ENTRY_BYTES + KEY_BYTES;
+        int a = map.getInt(at);
+        int b = map.getInt(at + VERSION_BYTES);
+        return new Slot(entry, a <= b ? 0 : 1, Math.max(a, b) + 1, offset, length, blobCrc);
+    }
+
+    private Slot committed(UUID id) {
+        // writes to slots only happen on this (the writer's) side, so no lock is needed here
+        return slots.get(id);
+    }
+
+    /** Slot of this many bytes: the start of the smallest free range that fits, or appended. */
+    private long allocate(long size) throws IOException {
+        Extent fit = freeBySize.ceiling(new Extent(Long.MIN_VALUE, size));
+        if (fit != null) {
+            takeFree(fit);
+            if (fit.length() > size) putFree(new Extent(fit.offset() + size, fit.length() - size));
+            return fit.offset();
+        }
+        long offset = end;
+        ensureMapped(offset + size);
+        end = offset + size;
+        return offset;
+    }
+
+    /** Return a range, merging it with free neighbours; one that reaches end shrinks it. */
+    private void release(long offset, long length) {
+        Map.Entry<Long, Extent> before = freeByOffset.floorEntry(offset);
+        if (before != null && before.getValue().offset() + before.getValue().length() == offset) {
+            takeFree(before.getValue());
+            offset = before.getValue().offset();
+            length += before.getValue().length();
+        }
+        Extent after = freeByOffset.get(offset + length);
+        if (after != null) {
+            takeFree(after);
+            length += after.length();
+        }
+        if (offset + length >= end) {
+            end = offset;
+            return;
+        }
+        putFree(new Extent(offset, length));
+    }
+
+    private void putFree(Extent e) {
+        freeByOffset.put(e.offset(), e);
+        freeBySize.add(e);
+        freeBytes += e.length();
+    }
+
+    private void takeFree(Extent e) {
+        freeByOffset.remove(e.offset());
+        freeBySize.remove(e);
+        freeBytes -= e.length();
+    }
+
+    private void ensureMapped(long needed) throws IOException {
+        if (needed <= map.capacity()) return;
+        if (needed > MAX_FILE_BYTES) throw new IOException(file.getFileName() + " is full");
+        // double while small, then 64 MiB at a time
+        long current = map.capacity();
+        long size = Math.max(needed, current + Math.min(current, 64 * GROW_STEP));
+        size = Math.min(MAX_FILE_BYTES, (size + GROW_STEP - 1) / GROW_STEP * GROW_STEP);
+        long stamp = lock.writeLock();
+        try {
+            // mapping past the end grows the file; views handed out earlier keep the old mapping
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Double the index in place. The slots that sit where the new entries go are moved to
+     * free space above them and published like an update, then the new entries are zeroed
+     * and the header takes the new capacity. A crash in between leaves the old capacity with
+     * some slots already moved, which is a valid store. Nothing may be staged.
+     */
+    private void growIndex() throws IOException {
+        int next = capacity * 2;
+        long nextBlobStart = HEADER_BYTES + (long) next * ENTRY_BYTES;
+        if (next <= 0 || nextBlobStart > MAX_FILE_BYTES) throw new IOException(file.getFileName() + " is full");
+
+        // nothing may be handed out below the new blob region any more
+        while (!freeByOffset.isEmpty() && freeByOffset.firstKey() < nextBlobStart) {
+            Extent e = freeByOffset.firstEntry().getValue();
+            takeFree(e);
+            long over = e.offset() + e.length() - nextBlobStart;
+            if (over > 0) putFree(new Extent(nextBlobStart, over));
+        }
+        if (end < nextBlobStart) {
+            ensureMapped(nextBlobStart);
+            end = nextBlobStart;
+        }
+
+        List<Slot> vacated = new ArrayList<>();
+        Map<UUID, Slot> moved = new HashMap<>();
+        for (Map.Entry<UUID, Slot> e : slots.entrySet()) {
+            Slot s = e.getValue();
+            if (s.offset() >= nextBlobStart) continue;
+            long to = allocate(s.capacity());
+            map.put((int) to, map.duplicate(), (int) s.offset(), s.length());
+            moved.put(e.getKey(), new Slot(s.entry(), 1 - s.half(), s.seq() + 1, to, s.length(), s.blobCrc()));
+            vacated.add(s);
+        }
+        map.force();
+        for (Map.Entry<UUID, Slot> e : moved.entrySet()) writeVersion(e.getKey(), e.getValue());
+        map.force();
+        long stamp = lock.writeLock();
+        try {
+            slots.putAll(moved);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        // a slot reaching past the new index keeps that part as free space
+        for (Slot s : vacated) {
+            long tail = s.offset() + s.capacity();
+            if (tail > nextBlobStart) release(nextBlobStart, tail - nextBlobStart);
+        }
+
+        // the old slots are index space now; nobody can be reading them any more
+        byte[] zeros = new byte[HEADER_BYTES];
+        for (long at = blobStart; at < nextBlobStart; at += zeros.length) {
+            map.put((int) at, zeros, 0, (int) Math.min(zeros.length, nextBlobStart - at));
+        }
+        map.force();
+        writeHeader(map, next);
+        map.force();
+
+        for (int i = capacity; i < next; i++) freeEntries.add(i);
+        capacity = next;
+        blobStart = nextBlobStart;
+        WhistleMod.LOGGER.info("[Whistle] grew {} to {} entries, moved {} snapshots", file.getFileName(), next, moved.size());
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return slots.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long fileBytes() {
+        MappedByteBuffer m = map;
+        return m != null ? m.capacity() : 0L;
+    }
+
+    long freeBytes() {
+        return freeBytes;
+    }
+
+    /**
+     * Commit what is staged and close the file. The mapping itself goes away with the last
+     * view of it.
+     */
+    synchronized void close() {
+        try {
+            commit();
+        } catch (IOException | RuntimeException e) {
+            WhistleMod.LOGGER.warn("[Whistle] failed to commit {}", file.getFileName(), e);
+        }
+        long stamp = lock.writeLock();
+        try {
+            slots.clear();
+            map = null;
+            closeChannel();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void closeChannel() {
+        FileChannel ch = channel;
+        channel = null;
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException ignored) {}
+    }
+
+    /** Size class of a slot holding this many bytes. */
+    private static int shiftFor(int length) {
+        return Math.max(MIN_SLOT_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(1, length) - 1));
+    }
+}
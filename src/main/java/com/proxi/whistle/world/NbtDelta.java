@@ -0,0 +1,75 @@
+package com.proxi.whistle.world;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+
+/**
+ * NbtDelta
+ *
+ * Structural difference between two captures of the same compound:
+ *  "s": compound of keys whose value is new or changed (the new value, whole)
+ *  "r": list of keys that are gone
+ *  "c": compound of per-key deltas for nested compounds that changed only partly
+ * Lists and primitives are replaced whole. Every entry carries the absolute new value, so
+ * applying a delta twice, or a run of deltas on top of a state that already includes them,
+ * is harmless: per key the last delta wins. That is what the journal replay relies on.
+ */
+final class NbtDelta {
+    private NbtDelta() {}
+
+    /**
+     * Delta turning from into to, or null when they are equal.
+     */
+    static NbtCompound diff(NbtCompound from, NbtCompound to) {
+        NbtCompound set = new NbtCompound();
+        NbtList removed = new NbtList();
+        NbtCompound children = new NbtCompound();
+        for (String key : to.getKeys()) {
+            NbtElement now = to.get(key);
+            NbtElement before = from.get(key);
+            if (now.equals(before)) continue;
+            if (now instanceof NbtCompound nowC && before instanceof NbtCompound beforeC) {
+                NbtCompound child = diff(beforeC, nowC);
+                // a child delta only pays off when it is smaller than the child itself
+                if (child != null && child.getSize() < nowC.getSize()) {
+                    children.put(key, child);
+                    continue;
+                }
+            }
+            set.put(key, now.copy());
+        }
+        for (String key : from.getKeys()) {
+            if (!to.contains(key)) removed.add(NbtString.of(key));
+        }
+        if (set.isEmpty() && removed.isEmpty() && children.isEmpty()) return null;
+        NbtCompound delta = new NbtCompound();
+        if (!set.isEmpty()) delta.put("s", set);
+        if (!removed.isEmpty()) delta.put("r", removed);
+        if (!children.isEmpty()) delta.put("c", children);
+        return delta;
+    }
+
+    /**
+     * Apply a delta in place.
+     */
+    static void apply(NbtCompound target, NbtCompound delta) {
+        if (delta.contains("s", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound set = delta.getCompound("s");
+            for (String key : set.getKeys()) target.put(key, set.get(key).copy());
+        }
+        if (delta.contains("r", NbtElement.LIST_TYPE)) {
+            NbtList removed = delta.getList("r", NbtElement.STRING_TYPE);
+            for (int i = 0; i < removed.size(); i++) target.remove(removed.getString(i));
+        }
+        if (delta.contains("c", NbtElement.COMPOUND_TYPE)) {
+            NbtCompound children = delta.getCompound("c");
+            for (String key : children.getKeys()) {
+                NbtCompound child = target.get(key) instanceof NbtCompound c ? c : new NbtCompound();
+                apply(child, children.getCompound(key));
+                target.put(key, child);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.proxi.whistle.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * OfflineRiders
+ *
+ * Which player logged out riding which bound horse, indexed both ways so a join clears its
+ * own markers without looking at anyone else's. Keyed by player UUID; the name is only for
+ * display (the table's offline column holds it for the tooltip). Markers saved before the
+ * UUID was recorded carry just the name and are indexed under it until cleared.
+ *
+ * Unlike the table row's offline column this survives its shard being unloaded, so a rider
+ * whose horse lives in someone else's shard is still found on join.
+ *
+ * Written from the server thread and from journal replay; every method is synchronized.
+ */
+final class OfflineRiders {
+    private record Marker(UUID player, String name) {}
+
+    private final Map<UUID, Marker> byHorse = new HashMap<>();
+    private final Map<UUID, Set<UUID>> byPlayer = new HashMap<>();
+    // markers from before the player UUID was saved
+    private final Map<String, Set<UUID>> byLegacyName = new HashMap<>();
+
+    synchronized void put(UUID horse, UUID player, String name) {
+        Marker marker = new Marker(player, name);
+        Marker previous = byHorse.put(horse, marker);
+        if (marker.equals(previous)) return;
+        if (previous != null) unindex(horse, previous);
+        if (player != null) byPlayer.computeIfAbsent(player, k -> new HashSet<>(2)).add(horse);
+        else if (name != null) byLegacyName.computeIfAbsent(name, k -> new HashSet<>(2)).add(horse);
+    }
+
+    synchronized void remove(UUID horse) {
+        Marker previous = byHorse.remove(horse);
+        if (previous != null) unindex(horse, previous);
+    }
+
+    /** Player UUID of the horse's marker, null if none or a legacy name-only marker. */
+    synchronized UUID playerOf(UUID horse) {
+        Marker marker = byHorse.get(horse);
+        return marker != null ? marker.player() : null;
+    }
+
+    /**
+     * Horses marked for this player, by UUID or (legacy markers) by name; a copy.
+     */
+    synchronized List<UUID> horsesOf(UUID player, String name) {
+        List<UUID> horses = new ArrayList<>();
+        Set<UUID> byId = player != null ? byPlayer.get(player) : null;
+        if (byId != null) horses.addAll(byId);
+        Set<UUID> byName = name != null ? byLegacyName.get(name) : null;
+        if (byName != null) horses.addAll(byName);
+        return horses;
+    }
+
+    synchronized int size() {
+        return byHorse.size();
+    }
+
+    synchronized void clear() {
+        byHorse.clear();
+        byPlayer.clear();
+        byLegacyName.clear();
+    }
+
+    private void unindex(UUID horse, Marker marker) {
+        Map<?, Set<UUID>> index = marker.player() != null ? byPlayer : byLegacyName;
+        Object key = marker.player() != null ? marker.player() : marker.name();
+        if (key == null) return;
+        Set<UUID> horses = index.get(key);
+        if (horses == null) return;
+        horses.remove(horse);
+        if (horses.isEmpty()) index.remove(key);
+    }
+}
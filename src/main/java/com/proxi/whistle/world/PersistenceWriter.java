@@ -0,0 +1,172 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * PersistenceWriter
+ *
+ * Write-behind engine for BoundEntityStorage. Mutations only call {@link #markDirty()},
+ * which is a couple of atomic ops; a dedicated daemon thread coalesces the marks and runs
+ * the actual write task when one of these is reached:
+ *  - the regular interval has passed since the first pending mark
+ *  - the number of pending marks reached maxDirty
+ *  - the oldest pending mark is about to exceed maxLatency
+ *
+ * Backpressure: when a write takes longer than the interval (slow disk), the next wait is
+ * stretched to the last write duration, capped by maxLatency. Marks that arrive while a
+ * write is in flight simply pile onto the next write, so at most one write ever runs.
+ *
+ * {@link #shutdownAndFlush()} stops the thread and performs a final synchronous write on
+ * the calling thread; that is the only place where the server thread waits on the disk.
+ */
+final class PersistenceWriter {
+    private final String name;
+    private final Runnable writeTask;
+    private final long intervalNanos;
+    private final int maxDirty;
+    private final long maxLatencyNanos;
+
+    private final Object signal = new Object();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong dirtyCount = new AtomicLong();
+    private volatile long firstDirtyNanos = 0L;
+    private volatile long lastWriteNanos = 0L;
+    private volatile long writesCompleted = 0L;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    PersistenceWriter(String name, Runnable writeTask, long intervalMs, int maxDirty, long maxLatencyMs) {
+        this.name = name;
+        this.writeTask = writeTask;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.maxDirty = Math.max(1, maxDirty);
+        this.maxLatencyNanos = Math.max(this.intervalNanos, TimeUnit.MILLISECONDS.toNanos(maxLatencyMs));
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+    }
+
+    /**
+     * Record that in-memory state changed. Never blocks.
+     */
+    void markDirty() {
+        long count = dirtyCount.incrementAndGet();
+        if (count == 1) firstDirtyNanos = System.nanoTime();
+        if (count == maxDirty) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    }
+
+    long pendingCount() {
+        return dirtyCount.get();
+    }
+
+    long lastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    long writesCompleted() {
+        return writesCompleted;
+    }
+
+    /**
+     * Stop the background thread and write everything still pending on the calling thread.
+     */
+    void shutdownAndFlush() {
+        Thread t;
+        synchronized (this) {
+            running = false;
+            t = thread;
+            thread = null;
+        }
+        if (t != null) {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // always write once more: guarantees nothing marked before this call is lost
+        writeNow();
+    }
+
+    /**
+     * Run the write task now, blocking until it is done. Serialized with the background thread.
+     */
+    void writeNow() {
+        writeLock.lock();
+        try {
+            dirtyCount.set(0);
+            long start = System.nanoTime();
+            try {
+                writeTask.run();
+            } catch (Throwable t) {
+                WhistleMod.LOGGER.warn("[Whistle] {} write failed", name, t);
+            }
+            lastWriteNanos = System.nanoTime() - start;
+            writesCompleted++;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Run the action while no write is in flight, or skip it and return false when the
+     * writer is busy. Lets the server thread reshape state the write task reads without
+     * ever waiting on the disk.
+     */
+    boolean tryWhileIdle(Runnable action) {
+        if (!writeLock.tryLock()) return false;
+        try {
+            action.run();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long pending = dirtyCount.get();
+                long waitNanos;
+                if (pending == 0) {
+                    waitNanos = intervalNanos;
+                } else {
+                    // backpressure: never write more often than the disk can keep up with
+                    long cadence = Math.min(Math.max(intervalNanos, lastWriteNanos), maxLatencyNanos);
+                    long age = System.nanoTime() - firstDirtyNanos;
+                    if (pending >= maxDirty || age >= cadence) {
+                        writeNow();
+                        continue;
+                    }
+                    waitNanos = cadence - age;
+                }
+                synchronized (signal) {
+                    if (running && dirtyCount.get() < maxDirty) {
+                        TimeUnit.NANOSECONDS.timedWait(signal, Math.max(1_000_000L, waitNanos));
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (Throwable t) {
+                WhistleMod.LOGGER.warn("[Whistle] {} loop error", name, t);
+            }
+        }
+    }
+}
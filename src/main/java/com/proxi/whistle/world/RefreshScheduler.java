@@ -0,0 +1,123 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * RefreshScheduler
+ *
+ * Spreads per-snapshot refresh work over every tick instead of doing the whole set once a
+ * second. Each cycle takes a copy of the current keys and walks it with a cursor, aiming to
+ * finish within periodTicks: every tick processes its fair share of what is left, but stops
+ * as soon as the per-tick nanosecond budget is spent and carries the rest over.
+ *
+ * When the budget is too small for the population a cycle overruns its period; how far
+ * behind it is shows up in {@link #behindTicks()} and in a rate-limited warning.
+ *
+ * Server thread only.
+ */
+final class RefreshScheduler {
+    private static final UUID[] EMPTY = new UUID[0];
+    private static final long WARN_INTERVAL_TICKS = 20 * 60;
+
+    private final long periodTicks;
+    private final long budgetNanos;
+
+    private UUID[] cycle = EMPTY;
+    private int cursor = 0;
+    private long cycleStartTick = Long.MIN_VALUE;
+    private long lastWarnTick = -WARN_INTERVAL_TICKS;
+
+    private volatile long behindTicks = 0L;
+    private volatile long lastCycleTicks = 0L;
+    private volatile int lastCycleSize = 0;
+    private volatile int processedLastTick = 0;
+
+    RefreshScheduler(long periodTicks, long budgetNanos) {
+        this.periodTicks = Math.max(1L, periodTicks);
+        this.budgetNanos = Math.max(1L, budgetNanos);
+    }
+
+    /**
+     * Do this tick's share of refresh work.
+     */
+    void run(long tick, Supplier<Collection<UUID>> keys, Consumer<UUID> work) {
+        processedLastTick = 0;
+        if (cursor >= cycle.length) {
+            // previous cycle done; start the next one once its period is over
+            // (or right away on the first run / after the tick counter went backwards)
+            boolean due = cycleStartTick == Long.MIN_VALUE || tick < cycleStartTick
+                    || tick - cycleStartTick >= periodTicks;
+            if (!due) return;
+            cycle = keys.get().toArray(EMPTY);
+            cursor = 0;
+            cycleStartTick = tick;
+            lastCycleSize = cycle.length;
+            if (cycle.length == 0) return;
+        }
+
+        long elapsed = tick - cycleStartTick;
+        long ticksLeft = periodTicks - elapsed;
+        int remaining = cycle.length - cursor;
+        // fair share of the remainder; once overdue, as much as the budget allows
+        int quota = ticksLeft > 0 ? (int) ((remaining + ticksLeft - 1) / ticksLeft) : remaining;
+
+        long start = System.nanoTime();
+        int done = 0;
+        while (done < quota && cursor < cycle.length) {
+            UUID id = cycle[cursor];
+            cycle[cursor++] = null;
+            try {
+                work.accept(id);
+            } catch (Throwable t) {
+                WhistleMod.LOGGER.warn("[Whistle] refresh of {} failed", id, t);
+            }
+            done++;
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+        processedLastTick = done;
+
+        if (cursor >= cycle.length) {
+            lastCycleTicks = elapsed + 1;
+            behindTicks = Math.max(0L, lastCycleTicks - periodTicks);
+            cycle = EMPTY;
+            cursor = 0;
+        } else {
+            behindTicks = Math.max(0L, elapsed + 1 - periodTicks);
+        }
+
+        if (behindTicks > 0 && tick - lastWarnTick >= WARN_INTERVAL_TICKS) {
+            lastWarnTick = tick;
+            WhistleMod.LOGGER.warn("[Whistle] snapshot refresh is {} ticks behind ({} of {} left in cycle); consider raising refresh.budgetMicros",
+                    behindTicks, cycle.length - cursor, lastCycleSize);
+        }
+    }
+
+    /** Ticks the current (or last) cycle overran its period by. */
+    long behindTicks() {
+        return behindTicks;
+    }
+
+    long lastCycleTicks() {
+        return lastCycleTicks;
+    }
+
+    int lastCycleSize() {
+        return lastCycleSize;
+    }
+
+    int processedLastTick() {
+        return processedLastTick;
+    }
+
+    void reset() {
+        cycle = EMPTY;
+        cursor = 0;
+        cycleStartTick = Long.MIN_VALUE;
+        behindTicks = 0L;
+    }
+}
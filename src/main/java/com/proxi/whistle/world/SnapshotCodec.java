@@ -0,0 +1,273 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.config.WhistleConfig;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * SnapshotCodec
+ *
+ * Compact resident form of a snapshot's NBT: the binary NBT encoding of the compound,
+ * deflated unless snapshot.compress is off, behind a one-byte codec tag:
+ *  0 = raw binary NBT
+ *  1 = deflate (BEST_SPEED) of the same (older saves; still read)
+ *  2 = raw deflate (BEST_SPEED) primed with {@link #DICTIONARY_V1}
+ * The preset dictionary is where content shared by every horse lives once: key names,
+ * attribute lists, "minecraft:..." ids, saddle and armor stacks, the empty Brain. Each
+ * encoded snapshot back-references it instead of carrying its own copy, which is most
+ * of what a 1-2 KB horse compound is made of.
+ * One flat byte[] per horse instead of a tree of thousands of small objects the GC has
+ * to trace. The same bytes are what shard files and journal records carry, so loading
+ * and saving a shard never has to build the trees at all.
+ */
+final class SnapshotCodec {
+    private SnapshotCodec() {}
+
+    static final byte RAW = 0;
+    static final byte DEFLATE = 1;
+    static final byte DEFLATE_DICT_V1 = 2;
+
+    /**
+     * Saved snapshots depend on these exact bytes: never change them. A better dictionary
+     * gets a new codec tag next to this one.
+     */
+    static final byte[] DICTIONARY_V1 = buildDictionaryV1();
+
+    static byte[] encode(NbtCompound nbt) {
+        return encode(nbt, WhistleConfig.snapshotCompress);
+    }
+
+    /**
+     * Tiny payloads (deltas) do not compress; pass false for those.
+     */
+    static byte[] encode(NbtCompound nbt, boolean compress) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(compress ? 1024 : 128);
+            if (compress) {
+                bytes.write(DEFLATE_DICT_V1);
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+                deflater.setDictionary(DICTIONARY_V1);
+                try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 512))) {
+                    NbtIo.write(nbt, out);
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                bytes.write(RAW);
+                DataOutputStream out = new DataOutputStream(bytes);
+                NbtIo.write(nbt, out);
+                out.flush();
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static NbtCompound decode(byte[] data) {
+        if (data == null || data.length == 0) return new NbtCompound();
+        try {
+            if (data[0] == DEFLATE_DICT_V1) {
+                byte[] raw = inflateRaw(data, DICTIONARY_V1);
+                return NbtIo.readCompound(new DataInputStream(new ByteArrayInputStream(raw)), NbtSizeTracker.ofUnlimitedBytes());
+            }
+            InputStream body = new ByteArrayInputStream(data, 1, data.length - 1);
+            if (data[0] == DEFLATE) {
+                Inflater inflater = new Inflater();
+                try (DataInputStream in = new DataInputStream(new InflaterInputStream(body, inflater, 512))) {
+                    return NbtIo.readCompound(in, NbtSizeTracker.ofUnlimitedBytes());
+                } finally {
+                    inflater.end();
+                }
+            }
+            return NbtIo.readCompound(new DataInputStream(body), NbtSizeTracker.ofUnlimitedBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Same as {@link #decode(byte[])}, reading the buffer's remaining bytes where they are
+     * (e.g. a view of the mapped snapshot store) without copying them to the heap first.
+     */
+    static NbtCompound decode(ByteBuffer data) {
+        if (data == null || !data.hasRemaining()) return new NbtCompound();
+        if (data.hasArray()) return decode(Arrays.copyOfRange(data.array(), data.arrayOffset() + data.position(), data.arrayOffset() + data.limit()));
+        try {
+            byte tag = data.get(data.position());
+            ByteBuffer body = data.slice(data.position() + 1, data.remaining() - 1);
+            if (tag == DEFLATE_DICT_V1) {
+                byte[] raw = inflateRaw(body, DICTIONARY_V1);
+                return NbtIo.readCompound(new DataInputStream(new ByteArrayInputStream(raw)), NbtSizeTracker.ofUnlimitedBytes());
+            }
+            InputStream in = new BufferInput(body);
+            if (tag == DEFLATE) {
+                Inflater inflater = new Inflater();
+                try (DataInputStream din = new DataInputStream(new InflaterInputStream(in, inflater, 512))) {
+                    return NbtIo.readCompound(din, NbtSizeTracker.ofUnlimitedBytes());
+                } finally {
+                    inflater.end();
+                }
+            }
+            return NbtIo.readCompound(new DataInputStream(in), NbtSizeTracker.ofUnlimitedBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** InputStream over a ByteBuffer's remaining bytes. */
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInput(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+
+    // InflaterInputStream reports EOF instead of asking for a dictionary, so inflate by hand
+    private static byte[] inflateRaw(byte[] data, byte[] dictionary) throws IOException {
+        return inflateRaw(ByteBuffer.wrap(data, 1, data.length - 1), dictionary);
+    }
+
+    private static byte[] inflateRaw(ByteBuffer data, byte[] dictionary) throws IOException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setDictionary(dictionary);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.remaining() * 4);
+            inflater.setInput(data);
+            byte[] buf = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("truncated snapshot data");
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Binary NBT fragments of what every saved horse repeats, written by hand in a fixed
+     * order (NbtCompound iterates a HashMap, which is no basis for bytes that must never
+     * change). Deflate finds matches near the end of the dictionary cheaper, so the most
+     * common parts go last.
+     */
+    private static byte[] buildDictionaryV1() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(2048);
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (String id : new String[] { "minecraft:chest", "minecraft:wheat", "minecraft:hay_block", "minecraft:golden_carrot", "minecraft:apple" }) {
+                stack(out, null, id);
+            }
+            named(out, NbtElement.BYTE_TYPE, "ChestedHorse").writeByte(1);
+            named(out, NbtElement.INT_TYPE, "Strength").writeInt(3);
+            stack(out, "DecorItem", "minecraft:white_carpet");
+            for (String armor : new String[] { "minecraft:leather_horse_armor", "minecraft:iron_horse_armor", "minecraft:golden_horse_armor", "minecraft:diamond_horse_armor" }) {
+                stack(out, "ArmorItem", armor);
+                stack(out, "body_armor_item", armor);
+            }
+            named(out, NbtElement.FLOAT_TYPE, "body_armor_drop_chance").writeFloat(2.0f);
+            for (String id : new String[] { "minecraft:llama", "minecraft:zombie_horse", "minecraft:skeleton_horse", "minecraft:mule", "minecraft:donkey" }) {
+                named(out, NbtElement.STRING_TYPE, "id").writeUTF(id);
+            }
+            named(out, NbtElement.INT_TYPE, "Variant").writeInt(0);
+            for (String id : new String[] { "minecraft:armor", "minecraft:scale", "minecraft:follow_range",
+                    "minecraft:fall_damage_multiplier", "minecraft:safe_fall_distance", "minecraft:step_height",
+                    "minecraft:jump_strength", "minecraft:movement_speed", "minecraft:max_health" }) {
+                named(out, NbtElement.STRING_TYPE, "id").writeUTF(id);
+                named(out, NbtElement.DOUBLE_TYPE, "base").writeDouble(0.0);
+                out.writeByte(NbtElement.END_TYPE);
+            }
+            named(out, NbtElement.LIST_TYPE, "attributes");
+            named(out, NbtElement.COMPOUND_TYPE, "Brain");
+            named(out, NbtElement.COMPOUND_TYPE, "memories").writeByte(NbtElement.END_TYPE);
+            out.writeByte(NbtElement.END_TYPE);
+            named(out, NbtElement.SHORT_TYPE, "Air").writeShort(300);
+            named(out, NbtElement.SHORT_TYPE, "Fire").writeShort(-1);
+            named(out, NbtElement.FLOAT_TYPE, "FallDistance").writeFloat(0f);
+            named(out, NbtElement.SHORT_TYPE, "HurtTime").writeShort(0);
+            named(out, NbtElement.INT_TYPE, "HurtByTimestamp").writeInt(0);
+            named(out, NbtElement.SHORT_TYPE, "DeathTime").writeShort(0);
+            named(out, NbtElement.BYTE_TYPE, "FallFlying").writeByte(0);
+            named(out, NbtElement.BYTE_TYPE, "OnGround").writeByte(1);
+            named(out, NbtElement.INT_TYPE, "PortalCooldown").writeInt(0);
+            named(out, NbtElement.BYTE_TYPE, "Invulnerable").writeByte(0);
+            named(out, NbtElement.FLOAT_TYPE, "AbsorptionAmount").writeFloat(0f);
+            named(out, NbtElement.BYTE_TYPE, "CanPickUpLoot").writeByte(0);
+            named(out, NbtElement.BYTE_TYPE, "PersistenceRequired").writeByte(0);
+            named(out, NbtElement.BYTE_TYPE, "LeftHanded").writeByte(0);
+            named(out, NbtElement.INT_TYPE, "Age").writeInt(0);
+            named(out, NbtElement.INT_TYPE, "ForcedAge").writeInt(0);
+            named(out, NbtElement.INT_TYPE, "InLove").writeInt(0);
+            named(out, NbtElement.BYTE_TYPE, "EatingHaystack").writeByte(0);
+            named(out, NbtElement.BYTE_TYPE, "Bred").writeByte(0);
+            named(out, NbtElement.INT_TYPE, "Temper").writeInt(0);
+            named(out, NbtElement.BYTE_TYPE, "Tame").writeByte(1);
+            stack(out, "SaddleItem", "minecraft:saddle");
+            named(out, NbtElement.FLOAT_TYPE, "Health").writeFloat(20f);
+            named(out, NbtElement.LIST_TYPE, "Rotation").writeByte(NbtElement.FLOAT_TYPE);
+            out.writeInt(2);
+            named(out, NbtElement.LIST_TYPE, "Motion").writeByte(NbtElement.DOUBLE_TYPE);
+            out.writeInt(3);
+            named(out, NbtElement.LIST_TYPE, "Pos").writeByte(NbtElement.DOUBLE_TYPE);
+            out.writeInt(3);
+            named(out, NbtElement.INT_ARRAY_TYPE, "Owner").writeInt(4);
+            named(out, NbtElement.INT_ARRAY_TYPE, "UUID").writeInt(4);
+            named(out, NbtElement.STRING_TYPE, "id").writeUTF("minecraft:horse");
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DataOutputStream named(DataOutputStream out, byte type, String name) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(name);
+        return out;
+    }
+
+    // an item stack compound, as a named tag or (name == null) as a list element
+    private static void stack(DataOutputStream out, String name, String id) throws IOException {
+        if (name != null) named(out, NbtElement.COMPOUND_TYPE, name);
+        named(out, NbtElement.STRING_TYPE, "id").writeUTF(id);
+        named(out, NbtElement.INT_TYPE, "count").writeInt(1);
+        out.writeByte(NbtElement.END_TYPE);
+    }
+}
@@ -0,0 +1,119 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SnapshotEncoder
+ *
+ * Worker pool for everything that follows an entity capture: diffing against the stored
+ * state, binary NBT encoding, deflate and the journal record. The server thread only pays
+ * for saveNbt and the hand-off. Work is striped by horse UUID over single-thread lanes, so
+ * the captures of one horse are always encoded in the order they were taken, while
+ * different horses proceed in parallel.
+ *
+ * Lanes have bounded queues; when one is full the submitting thread waits for room rather
+ * than dropping a capture or running it out of order. With zero lanes (single-core hosts,
+ * or snapshot.encodeThreads=0) work simply runs on the caller.
+ */
+final class SnapshotEncoder {
+    private static final int QUEUE_CAPACITY = 4096;
+
+    private final ThreadPoolExecutor[] lanes;
+    private final AtomicLong queued = new AtomicLong();
+
+    SnapshotEncoder(int threads) {
+        lanes = new ThreadPoolExecutor[Math.max(0, threads)];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "Whistle-Encoder-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }, (r, executor) -> {
+                // backpressure: wait for the lane instead of breaking per-horse order
+                try {
+                    if (!executor.isShutdown()) executor.getQueue().put(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /**
+     * Lanes to use for a requested thread count: negative = automatic, about half the cores
+     * (the rest belong to the server and vanilla's own workers), none on a single core.
+     */
+    static int threadsFor(int requested) {
+        if (requested >= 0) return requested;
+        int cores = Runtime.getRuntime().availableProcessors();
+        return cores <= 1 ? 0 : Math.min(4, Math.max(1, cores / 2));
+    }
+
+    int threads() {
+        return lanes.length;
+    }
+
+    /** Tasks submitted and not finished yet. */
+    long pending() {
+        return queued.get();
+    }
+
+    /**
+     * Run task on the lane of this horse (or right here without lanes).
+     */
+    void submit(UUID id, Runnable task) {
+        if (lanes.length == 0) {
+            run(task);
+            return;
+        }
+        int lane = (int) ((id.getMostSignificantBits() ^ id.getLeastSignificantBits()) & Integer.MAX_VALUE) % lanes.length;
+        queued.incrementAndGet();
+        lanes[lane].execute(() -> {
+            try {
+                run(task);
+            } finally {
+                queued.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Block until everything submitted before this call has run. Must not be called from a
+     * lane thread.
+     */
+    void awaitIdle() {
+        if (lanes.length == 0 || queued.get() == 0) return;
+        CompletableFuture<?>[] barriers = new CompletableFuture<?>[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            CompletableFuture<Void> barrier = new CompletableFuture<>();
+            barriers[i] = barrier;
+            try {
+                lanes[i].execute(() -> barrier.complete(null));
+            } catch (Throwable t) {
+                barrier.complete(null);
+            }
+        }
+        try {
+            CompletableFuture.allOf(barriers).get(30, TimeUnit.SECONDS);
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] snapshot encoder did not drain ({} tasks left)", queued.get(), t);
+        }
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] snapshot encoding failed", t);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+import com.proxi.whistle.metrics.WhistleMetrics;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * SnapshotJournal
+ *
+ * Write-ahead log next to a compressed NBT base file. Each mutation is appended as a
+ * small framed NBT record ({@code [int length][int crc32][uncompressed nbt]}), so a
+ * single-field change costs O(record) on disk instead of a full rewrite.
+ *
+ * Records must describe absolute state (not relative changes): compaction snapshots the
+ * in-memory store while newer records may still be queued, and those are replayed on top
+ * of the new base afterwards. Replaying a record twice must therefore be harmless.
+ *
+ * Threading: {@link #append} is called from any thread and only enqueues. {@link #drain}
+ * and {@link #compact} are called from the single persistence writer thread (or from the
+ * server thread at shutdown, after the writer stopped).
+ */
+final class SnapshotJournal {
+    private final Path baseFile;
+    private final Path logFile;
+    private final Deque<NbtCompound> pending = new ConcurrentLinkedDeque<>();
+    // appended but not yet durable in the log (queued or mid-drain)
+    private final AtomicInteger unwritten = new AtomicInteger();
+    private volatile long logBytes = 0L;
+
+    SnapshotJournal(Path baseFile) {
+        this.baseFile = baseFile;
+        this.logFile = baseFile.resolveSibling(baseFile.getFileName() + ".log");
+        try {
+            if (Files.isRegularFile(logFile)) logBytes = Files.size(logFile);
+        } catch (IOException ignored) {}
+    }
+
+    Path baseFile() {
+        return baseFile;
+    }
+
+    long logBytes() {
+        return logBytes;
+    }
+
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * True once every appended record is on disk, i.e. the files alone describe the state.
+     */
+    boolean isSettled() {
+        return unwritten.get() == 0;
+    }
+
+    /**
+     * Queue a record for the next drain. Never blocks.
+     */
+    void append(NbtCompound record) {
+        if (record == null) return;
+        unwritten.incrementAndGet();
+        pending.add(record);
+    }
+
+    /**
+     * Hand the base file (if any) to onBase, then every intact record of the log, in order,
+     * to replay. A torn or corrupt tail (crash mid-append) ends the replay and is cut off;
+     * everything before it is kept. A base that fails to read is moved aside to *.corrupt.
+     */
+    void load(Consumer<NbtCompound> onBase, Consumer<NbtCompound> replay) throws IOException {
+        if (Files.isRegularFile(baseFile)) {
+            try {
+                NbtCompound base = NbtIo.readCompressed(baseFile, NbtSizeTracker.ofUnlimitedBytes());
+                if (base != null && onBase != null) onBase.accept(base);
+            } catch (Throwable t) {
+                WhistleMod.LOGGER.warn("[Whistle] {} is unreadable, moving it aside", baseFile.getFileName(), t);
+                try {
+                    Files.move(baseFile, baseFile.resolveSibling(baseFile.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+                } catch (Throwable ignored) {}
+            }
+        }
+        if (Files.isRegularFile(logFile)) {
+            int applied = 0;
+            long good = 0L;
+            try (InputStream raw = Files.newInputStream(logFile);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+                while (true) {
+                    int len;
+                    try {
+                        len = in.readInt();
+                    } catch (EOFException eof) {
+                        break;
+                    }
+                    int crc = in.readInt();
+                    if (len <= 0 || len > (64 << 20)) break;
+                    byte[] data = new byte[len];
+                    in.readFully(data);
+                    CRC32 c = new CRC32();
+                    c.update(data, 0, len);
+                    if ((int) c.getValue() != crc) break;
+                    NbtCompound rec = NbtIo.readCompound(new DataInputStream(new ByteArrayInputStream(data)), NbtSizeTracker.ofUnlimitedBytes());
+                    if (replay != null) replay.accept(rec);
+                    applied++;
+                    good += 8L + len;
+                }
+            } catch (EOFException torn) {
+                // partial frame at the end, handled below
+            }
+            long size = Files.size(logFile);
+            if (good < size) {
+                // cut the torn/corrupt tail so new appends stay readable
+                WhistleMod.LOGGER.warn("[Whistle] journal {} has {} bytes of torn tail, truncating", logFile.getFileName(), size - good);
+                try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                    ch.truncate(good);
+                    ch.force(true);
+                }
+            }
+            logBytes = good;
+            WhistleMod.LOGGER.info("[Whistle] replayed {} journal records from {}", applied, logFile.getFileName());
+        }
+    }
+
+    /**
+     * Append every queued record to the log and fsync it. On failure the records go back to
+     * the front of the queue, so the next drain retries them in order.
+     */
+    void drain() throws IOException {
+        if (pending.isEmpty()) return;
+        long start = System.nanoTime();
+        List<NbtCompound> batch = new ArrayList<>();
+        NbtCompound rec;
+        while ((rec = pending.pollFirst()) != null) batch.add(rec);
+        try {
+            ByteArrayOutputStream frames = new ByteArrayOutputStream(4096);
+            DataOutputStream out = new DataOutputStream(frames);
+            ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+            for (NbtCompound r : batch) {
+                body.reset();
+                NbtIo.write(r, new DataOutputStream(body));
+                byte[] data = body.toByteArray();
+                CRC32 c = new CRC32();
+                c.update(data, 0, data.length);
+                out.writeInt(data.length);
+                out.writeInt((int) c.getValue());
+                out.write(data);
+            }
+            out.flush();
+            try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buf = ByteBuffer.wrap(frames.toByteArray());
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(false);
+                logBytes = ch.size();
+            }
+            WhistleMetrics.BYTES_WRITTEN.add(frames.size());
+        } catch (IOException | RuntimeException e) {
+            for (int i = batch.size() - 1; i >= 0; i--) pending.addFirst(batch.get(i));
+            throw e;
+        }
+        unwritten.addAndGet(-batch.size());
+        WhistleMetrics.JOURNAL_DRAIN.recordSince(start);
+    }
+
+    /**
+     * Fold the log into a new base: drain, write the exported state atomically, then truncate
+     * the log. Anything queued after the drain survives in the queue for the next drain.
+     */
+    void compact(Supplier<NbtCompound> export) throws IOException {
+        drain();
+        long start = System.nanoTime();
+        NbtCompound out = export.get();
+        Path tmp = baseFile.resolveSibling(baseFile.getFileName() + ".tmp");
+        NbtIo.writeCompressed(out, tmp);
+        WhistleMetrics.BYTES_WRITTEN.add(Files.size(tmp));
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, baseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException atomicFailed) {
+            Files.move(tmp, baseFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // base is durable now; the records it folded in are no longer needed
+        try (FileChannel ch = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ch.truncate(0);
+            ch.force(true);
+        }
+        logBytes = 0L;
+        WhistleMetrics.COMPACTION.recordSince(start);
+    }
+}
@@ -0,0 +1,47 @@
+package com.proxi.whistle.world;
+
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SnapshotShard
+ *
+ * One resident slice of the bound-entity store: the horses of a single owner (or the
+ * "unowned" bucket), persisted as its own base file + journal under data/whistle/.
+ * The entries themselves live in BoundEntityStorage's table; the shard only tracks which
+ * UUIDs belong to it so it can be exported, compacted and unloaded on its own.
+ */
+final class SnapshotShard {
+    static final String UNOWNED = "unowned";
+
+    final String key;
+    final UUID owner;
+    final SnapshotJournal journal;
+    final Set<UUID> members = ConcurrentHashMap.newKeySet();
+    volatile long lastAccessNanos = System.nanoTime();
+
+    SnapshotShard(String key, UUID owner, Path dir) {
+        this.key = key;
+        this.owner = owner;
+        this.journal = new SnapshotJournal(dir.resolve(key + ".nbt"));
+    }
+
+    static String keyForOwner(UUID owner) {
+        return owner != null ? StorageInterner.string("owner-" + owner) : UNOWNED;
+    }
+
+    static UUID ownerOfKey(String key) {
+        if (key == null || !key.startsWith("owner-")) return null;
+        try {
+            return UUID.fromString(key.substring("owner-".length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,98 @@
+package com.proxi.whistle.world;
+
+import net.minecraft.util.Identifier;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StorageInterner
+ *
+ * Canonical instances for the small, endlessly repeated values the resident store holds
+ * per entry: dimension identifiers, shard keys and offline player names. Importing a
+ * shard or replaying a journal would otherwise parse a fresh Identifier / String for every
+ * single entry. The sets are tiny (a handful of dimensions, one key per owner, one name per
+ * player), so the tables are plain maps that are never trimmed.
+ *
+ * Dimensions and shard keys also get small int ids for BoundEntityTable's primitive
+ * columns. Ids are process-local (never written to disk) and 0 stands for "none".
+ */
+final class StorageInterner {
+    private StorageInterner() {}
+
+    private static final Map<String, Identifier> dimensions = new ConcurrentHashMap<>();
+    private static final Map<String, String> strings = new ConcurrentHashMap<>();
+    private static final Dictionary<Identifier> dimensionIds = new Dictionary<>(0xFFFF);
+    private static final Dictionary<String> shardIds = new Dictionary<>(Integer.MAX_VALUE);
+
+    /** Two-way map between values and dense ids starting at 1. */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> ids = new ConcurrentHashMap<>();
+        private final int maxId;
+        private volatile Object[] values = new Object[16];
+        private int next = 1;
+
+        Dictionary(int maxId) {
+            this.maxId = maxId;
+        }
+
+        int id(T value) {
+            if (value == null) return 0;
+            Integer id = ids.get(value);
+            return id != null ? id : add(value);
+        }
+
+        private synchronized int add(T value) {
+            Integer id = ids.get(value);
+            if (id != null) return id;
+            if (next > maxId) throw new IllegalStateException("more than " + maxId + " distinct values");
+            Object[] v = values;
+            if (next >= v.length) v = Arrays.copyOf(v, v.length * 2);
+            v[next] = value;
+            // publish the array before the id so a reader that got the id finds the value
+            values = v;
+            ids.put(value, next);
+            return next++;
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int id) {
+            Object[] v = values;
+            return id > 0 && id < v.length ? (T) v[id] : null;
+        }
+    }
+
+    static Identifier dimension(String id) {
+        if (id == null || id.isEmpty()) return null;
+        Identifier known = dimensions.get(id);
+        if (known != null) return known;
+        Identifier parsed = Identifier.tryParse(id);
+        if (parsed == null) return null;
+        Identifier prev = dimensions.putIfAbsent(id, parsed);
+        return prev != null ? prev : parsed;
+    }
+
+    static String string(String s) {
+        if (s == null) return null;
+        String prev = strings.putIfAbsent(s, s);
+        return prev != null ? prev : s;
+    }
+
+    /** Id of a dimension for BoundEntityTable (at most 65535 distinct ones), 0 for null. */
+    static int dimensionId(Identifier dimension) {
+        return dimensionIds.id(dimension);
+    }
+
+    static Identifier dimension(int id) {
+        return dimensionIds.get(id);
+    }
+
+    static int shardId(String key) {
+        return shardIds.id(key != null ? string(key) : null);
+    }
+
+    static String shardKey(int id) {
+        return shardIds.get(id);
+    }
+}
@@ -0,0 +1,79 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.WhistleMod;
+import com.proxi.whistle.mixin.EntityChunkDataAccessAccessor;
+import com.proxi.whistle.mixin.ServerEntityManagerAccessor;
+import com.proxi.whistle.mixin.ServerWorldAccessor;
+import net.minecraft.datafixer.DataFixTypes;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Util;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.storage.ChunkDataAccess;
+import net.minecraft.world.storage.StorageIoWorker;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * VanillaEntityReader
+ *
+ * Reads one entity straight from a dimension's entity region storage (entities/*.mca)
+ * without loading its chunk: only the one entity chunk is read, through vanilla's own IO
+ * worker, and parsing/datafixing happens on the worker pool. The server thread only polls
+ * the returned future.
+ */
+public final class VanillaEntityReader {
+    private VanillaEntityReader() {}
+
+    /**
+     * NBT of the entity with this UUID as vanilla last saved it in that chunk, or empty when
+     * the chunk has no such entity (or can not be read).
+     */
+    public static CompletableFuture<Optional<NbtCompound>> read(ServerWorld world, ChunkPos chunk, UUID uuid) {
+        StorageIoWorker worker = ioWorker(world);
+        if (worker == null) return CompletableFuture.completedFuture(Optional.empty());
+        return worker.readChunkData(chunk)
+                .thenApplyAsync(data -> data.flatMap(nbt -> find(world, nbt, uuid)), Util.getMainWorkerExecutor())
+                .exceptionally(t -> {
+                    WhistleMod.LOGGER.warn("[Whistle] failed to read entity chunk {} in {}", chunk, world.getRegistryKey().getValue(), t);
+                    return Optional.empty();
+                });
+    }
+
+    private static StorageIoWorker ioWorker(ServerWorld world) {
+        try {
+            ChunkDataAccess<?> access = ((ServerEntityManagerAccessor) ((ServerWorldAccessor) world).whistle$getEntityManager()).whistle$getDataAccess();
+            if (access instanceof EntityChunkDataAccessAccessor entities) return entities.whistle$getDataLoadWorker();
+        } catch (Throwable t) {
+            WhistleMod.LOGGER.warn("[Whistle] entity storage of {} not reachable", world.getRegistryKey().getValue(), t);
+        }
+        return null;
+    }
+
+    private static Optional<NbtCompound> find(ServerWorld world, NbtCompound chunkNbt, UUID uuid) {
+        // same upgrade vanilla applies before loading the chunk
+        int version = NbtHelper.getDataVersion(chunkNbt, -1);
+        NbtCompound fixed = DataFixTypes.ENTITY_CHUNK.update(world.getServer().getDataFixer(), chunkNbt, version);
+        return find(fixed.getList("Entities", NbtElement.COMPOUND_TYPE), uuid);
+    }
+
+    private static Optional<NbtCompound> find(NbtList entities, UUID uuid) {
+        for (int i = 0; i < entities.size(); i++) {
+            NbtCompound entity = entities.getCompound(i);
+            try {
+                if (entity.containsUuid("UUID") && uuid.equals(entity.getUuid("UUID"))) return Optional.of(entity);
+            } catch (Throwable ignored) {}
+            // the horse may be saved as a passenger of another entity
+            if (entity.contains("Passengers")) {
+                Optional<NbtCompound> passenger = find(entity.getList("Passengers", NbtElement.COMPOUND_TYPE), uuid);
+                if (passenger.isPresent()) return passenger;
+            }
+        }
+        return Optional.empty();
+    }
+}
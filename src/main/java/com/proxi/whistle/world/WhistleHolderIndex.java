@@ -0,0 +1,145 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.item.WhistleItem;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.ScreenHandlerListener;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * WhistleHolderIndex
+ *
+ * Server-side reverse index: bound horse UUID -> (player, inventory slot) of every whistle
+ * currently referencing it. Kept up to date from listeners on the screen handlers vanilla
+ * already diffs slot by slot: the player's own inventory handler and, through
+ * ServerPlayerScreenMixin, every container handler the player opens, whose player-inventory
+ * slots map back to inventory indices. Moves, pickups, drops, deaths, transfers to and from
+ * containers and in-place component changes all come through those callbacks. Seeing a
+ * change twice (from both handlers) is harmless: a slot that already points at a horse is
+ * left alone. Lets the sync path look up holders in O(holders) instead of scanning every
+ * inventory for every snapshot.
+ *
+ * Server thread only.
+ */
+public final class WhistleHolderIndex {
+    private WhistleHolderIndex() {}
+
+    public record Holder(UUID player, int slot) {}
+
+    private static final Map<UUID, Set<Holder>> byHorse = new HashMap<>();
+    // player -> horse referenced by each inventory slot (null = none)
+    private static final Map<UUID, UUID[]> byPlayer = new HashMap<>();
+
+    /**
+     * Start tracking a player: full scan once, then incremental updates from the listener.
+     * Call on join and again after respawn (the player entity and its handler are new).
+     */
+    public static void track(ServerPlayerEntity player) {
+        if (player == null) return;
+        PlayerInventory inv = player.getInventory();
+        track(player.getUuid(), inv.size());
+        for (int slot = 0; slot < inv.size(); slot++) {
+            ItemStack stack = inv.getStack(slot);
+            if (stack.getItem() instanceof WhistleItem) WhistleItem.migrateLegacyBinding(stack);
+            update(player.getUuid(), slot, stack);
+        }
+        player.playerScreenHandler.addListener(new Listener(player));
+    }
+
+    /**
+     * Also follow a screen handler the player opened; see ServerPlayerScreenMixin.
+     */
+    public static void watch(ServerPlayerEntity player, ScreenHandler handler) {
+        if (player == null || handler == null || handler == player.playerScreenHandler) return;
+        if (!byPlayer.containsKey(player.getUuid())) return;
+        handler.addListener(new Listener(player));
+    }
+
+    static void track(UUID player, int slots) {
+        untrack(player);
+        byPlayer.put(player, new UUID[slots]);
+    }
+
+    /**
+     * Forget every holder of a player (disconnect).
+     */
+    public static void untrack(UUID player) {
+        UUID[] slots = byPlayer.remove(player);
+        if (slots == null) return;
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != null) removeHolder(slots[slot], new Holder(player, slot));
+        }
+    }
+
+    public static void clear() {
+        byHorse.clear();
+        byPlayer.clear();
+    }
+
+    /**
+     * Current holders of whistles bound to the given horse. Do not modify.
+     */
+    public static Set<Holder> holders(UUID horse) {
+        Set<Holder> set = byHorse.get(horse);
+        return set != null ? set : Collections.emptySet();
+    }
+
+    public static int trackedHorseCount() {
+        return byHorse.size();
+    }
+
+    static void update(UUID player, int slot, ItemStack stack) {
+        setSlot(player, slot, stack != null && !stack.isEmpty() && stack.getItem() instanceof WhistleItem
+                ? WhistleItem.getBoundUuid(stack) : null);
+    }
+
+    /**
+     * Record which horse (null = none) the whistle in a player's inventory slot is bound to.
+     */
+    static void setSlot(UUID player, int slot, UUID horse) {
+        UUID[] slots = byPlayer.get(player);
+        if (slots == null || slot < 0 || slot >= slots.length) return;
+        UUID previous = slots[slot];
+        if (horse == null ? previous == null : horse.equals(previous)) return;
+        Holder holder = new Holder(player, slot);
+        if (previous != null) removeHolder(previous, holder);
+        if (horse != null) {
+            byHorse.computeIfAbsent(horse, k -> new HashSet<>(2)).add(holder);
+            HorseSyncBatcher.invalidate(player, horse);
+        }
+        slots[slot] = horse;
+    }
+
+    private static void removeHolder(UUID horse, Holder holder) {
+        Set<Holder> set = byHorse.get(horse);
+        if (set == null) return;
+        set.remove(holder);
+        if (set.isEmpty()) byHorse.remove(horse);
+    }
+
+    /**
+     * Maps handler slot ids to player inventory indices; handler slots not backed by the
+     * player inventory (crafting grid and result, the container's own slots) are ignored.
+     */
+    private record Listener(ServerPlayerEntity player) implements ScreenHandlerListener {
+        @Override
+        public void onSlotUpdate(ScreenHandler handler, int slotId, ItemStack stack) {
+            if (slotId < 0 || slotId >= handler.slots.size()) return;
+            Slot slot = handler.slots.get(slotId);
+            if (slot.inventory != player.getInventory()) return;
+            update(player.getUuid(), slot.getIndex(), stack);
+        }
+
+        @Override
+        public void onPropertyUpdate(ScreenHandler handler, int property, int value) {}
+    }
+}
@@ -0,0 +1,175 @@
+package com.proxi.whistle.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BoundEntityTableTest
+ *
+ * Growing past the initial capacity, backward-shift removal keeping probe runs intact, what
+ * release() keeps of a row, and the running data sizes.
+ */
+class BoundEntityTableTest {
+    private static final int OVERWORLD = 1;
+    private static final int NETHER = 2;
+
+    @Test
+    void growsPastInitialCapacity() {
+        BoundEntityTable table = new BoundEntityTable();
+        List<UUID> ids = ids(2_000, 1);
+        for (int i = 0; i < ids.size(); i++) {
+            table.locate(ids.get(i), i % 2 == 0 ? OVERWORLD : NETHER, i, BoundEntityTable.RESIDENT, 0);
+            table.setShard(ids.get(i), 1 + i % 5);
+        }
+        assertEquals(ids.size(), table.size());
+        assertEquals(1_000, table.residentIn(OVERWORLD));
+        assertEquals(1_000, table.residentIn(NETHER));
+        for (int i = 0; i < ids.size(); i++) {
+            UUID id = ids.get(i);
+            assertEquals(i, table.pos(id));
+            assertEquals(1 + i % 5, table.shard(id));
+            assertEquals(i % 2 == 0 ? OVERWORLD : NETHER, BoundEntityTable.dimensionOf(table.meta(id)));
+        }
+        assertEquals(1_000, table.residentKeys(NETHER).size());
+    }
+
+    @Test
+    void removeKeepsTheRestReachable() {
+        BoundEntityTable table = new BoundEntityTable();
+        List<UUID> ids = ids(1_000, 2);
+        for (UUID id : ids) {
+            table.setShard(id, 1);
+            table.update(id, BoundEntityTable.LOADED, 0);
+        }
+        for (int i = 0; i < ids.size(); i += 2) table.remove(ids.get(i));
+
+        assertEquals(500, table.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i % 2 != 0, table.contains(ids.get(i)));
+        }
+        assertEquals(500, table.count(BoundEntityTable.LOADED));
+
+        // removed slots must be reusable without breaking lookups of the survivors
+        for (int i = 0; i < ids.size(); i += 2) table.setShard(ids.get(i), 2);
+        assertEquals(1_000, table.size());
+        for (int i = 0; i < ids.size(); i++) assertEquals(i % 2 == 0 ? 2 : 1, table.shard(ids.get(i)));
+    }
+
+    @Test
+    void releaseKeepsShardOfflineMarkerAndTombstone() {
+        BoundEntityTable table = new BoundEntityTable();
+        UUID id = UUID.randomUUID();
+        table.locate(id, OVERWORLD, 42L, BoundEntityTable.RESIDENT | BoundEntityTable.LOADED, 0);
+        table.setShard(id, 7);
+        table.setData(id, "snapshot");
+        table.setTick(id, 100);
+        table.setOffline(id, "rider");
+        table.update(id, BoundEntityTable.TO_DELETE, 0);
+
+        table.release(id);
+
+        assertTrue(table.contains(id));
+        assertFalse(table.has(id, BoundEntityTable.RESIDENT));
+        assertFalse(table.has(id, BoundEntityTable.LOADED));
+        assertTrue(table.has(id, BoundEntityTable.OFFLINE));
+        assertTrue(table.has(id, BoundEntityTable.TO_DELETE));
+        assertEquals("rider", table.offline(id));
+        assertEquals(7, table.shard(id));
+        assertEquals(0L, table.pos(id));
+        assertEquals(0, table.tick(id));
+        assertNull(table.data(id));
+        assertEquals(0, table.residentIn(OVERWORLD));
+    }
+
+    @Test
+    void rowGoesOnceNothingIsLeft() {
+        BoundEntityTable table = new BoundEntityTable();
+        UUID id = UUID.randomUUID();
+        table.locate(id, OVERWORLD, 1L, BoundEntityTable.RESIDENT, 0);
+        table.setData(id, "snapshot");
+        table.setOffline(id, "rider");
+
+        table.setOffline(id, null);
+        assertTrue(table.contains(id));
+        table.update(id, 0, BoundEntityTable.RESIDENT);
+        assertTrue(table.contains(id));
+        table.setData(id, null);
+        assertFalse(table.contains(id));
+        assertEquals(0, table.size());
+
+        // a released row without shard, marker or tombstone is dropped as well
+        table.locate(id, OVERWORLD, 1L, BoundEntityTable.RESIDENT, 0);
+        table.release(id);
+        assertFalse(table.contains(id));
+    }
+
+    @Test
+    void replaceDataOnlyWhileResident() {
+        BoundEntityTable table = new BoundEntityTable();
+        UUID id = UUID.randomUUID();
+        table.locate(id, OVERWORLD, 1L, BoundEntityTable.RESIDENT, 0);
+        table.setShard(id, 3);
+        table.setData(id, "old");
+        assertTrue(table.replaceData(id, "new"));
+        assertEquals("new", table.data(id));
+
+        table.release(id);
+        assertFalse(table.replaceData(id, "late"));
+        assertNull(table.data(id));
+        assertFalse(table.replaceData(UUID.randomUUID(), "none"));
+    }
+
+    @Test
+    void dataBytesFollowDataAndShardChanges() {
+        BoundEntityTable table = new BoundEntityTable(data -> ((String) data).length());
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        table.locate(a, OVERWORLD, 1L, BoundEntityTable.RESIDENT, 0);
+        table.setData(a, "12345");
+        assertEquals(5, table.dataBytes());
+        assertEquals(5, table.dataBytesIn(0));
+
+        table.setShard(a, 3);
+        assertEquals(0, table.dataBytesIn(0));
+        assertEquals(5, table.dataBytesIn(3));
+
+        table.locate(b, OVERWORLD, 2L, BoundEntityTable.RESIDENT, 0);
+        table.setShardIfAbsent(b, 3);
+        table.setData(b, "123");
+        assertTrue(table.replaceData(a, "1234567"));
+        assertEquals(10, table.dataBytes());
+        assertEquals(10, table.dataBytesIn(3));
+
+        table.release(a);
+        assertEquals(3, table.dataBytes());
+        assertEquals(3, table.dataBytesIn(3));
+        table.remove(b);
+        assertEquals(0, table.dataBytes());
+        assertEquals(0, table.dataBytesIn(3));
+
+        // shard ids past the initial array
+        table.locate(b, OVERWORLD, 2L, BoundEntityTable.RESIDENT, 0);
+        table.setShard(b, 500);
+        table.setData(b, "12");
+        assertEquals(2, table.dataBytesIn(500));
+        table.clear();
+        assertEquals(0, table.dataBytes());
+        assertEquals(0, table.dataBytesIn(500));
+    }
+
+    private static List<UUID> ids(int n, long seed) {
+        Random random = new Random(seed);
+        List<UUID> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) ids.add(new UUID(random.nextLong(), random.nextLong()));
+        return ids;
+    }
+}
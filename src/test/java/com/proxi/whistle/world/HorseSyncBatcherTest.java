@@ -0,0 +1,132 @@
+package com.proxi.whistle.world;
+
+import com.proxi.whistle.component.BoundHorseData;
+import com.proxi.whistle.network.HorseSubscribePayload;
+import com.proxi.whistle.network.HorseSyncBatchPayload;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HorseSyncBatcherTest
+ *
+ * The per-player last-sent delta, the reset when a whistle lands in a new slot, parking a
+ * change until its interval is up, and leaving out horses a client did not subscribe to.
+ */
+class HorseSyncBatcherTest {
+    private static final Identifier OVERWORLD = Identifier.of("minecraft", "overworld");
+    private static final Identifier NETHER = Identifier.of("minecraft", "the_nether");
+
+    private final UUID alice = new UUID(1L, 1L);
+    private final UUID bob = new UUID(1L, 2L);
+    private final UUID clover = new UUID(2L, 1L);
+    private final UUID dusty = new UUID(2L, 2L);
+    // what the storage would answer for getLatestData
+    private final Map<UUID, BoundHorseData> latest = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        HorseSyncBatcher.clear();
+        WhistleHolderIndex.clear();
+        WhistleHolderIndex.track(alice, 9);
+        WhistleHolderIndex.track(bob, 9);
+    }
+
+    @AfterEach
+    void tearDown() {
+        HorseSyncBatcher.clear();
+        WhistleHolderIndex.clear();
+    }
+
+    @Test
+    void unchangedLocationIsNotSentAgain() {
+        place(clover, OVERWORLD, new BlockPos(10, 64, 10));
+        WhistleHolderIndex.setSlot(alice, 0, clover);
+        assertEquals(List.of(entry(clover, OVERWORLD, new BlockPos(10, 64, 10))), collect(0).get(alice));
+
+        HorseSyncBatcher.queue(clover, OVERWORLD, new BlockPos(10, 64, 10));
+        assertTrue(collect(1).isEmpty());
+
+        HorseSyncBatcher.queue(clover, NETHER, new BlockPos(1, 70, 1));
+        assertEquals(List.of(entry(clover, NETHER, new BlockPos(1, 70, 1))), collect(2).get(alice));
+        assertEquals(0, HorseSyncBatcher.pendingCount());
+    }
+
+    @Test
+    void newSlotSendsTheLocationAgain() {
+        place(clover, OVERWORLD, new BlockPos(10, 64, 10));
+        WhistleHolderIndex.setSlot(alice, 0, clover);
+        collect(0);
+
+        // a second whistle for the same horse: its stack may show an older location
+        WhistleHolderIndex.setSlot(alice, 4, clover);
+        assertEquals(List.of(entry(clover, OVERWORLD, new BlockPos(10, 64, 10))), collect(1).get(alice));
+
+        // the same whistle staying in its slot is no news
+        WhistleHolderIndex.setSlot(alice, 4, clover);
+        assertTrue(collect(2).isEmpty());
+    }
+
+    @Test
+    void earlyChangeIsParkedAndSentFresh() {
+        place(clover, OVERWORLD, new BlockPos(0, 64, 0));
+        WhistleHolderIndex.setSlot(alice, 0, clover);
+        HorseSyncBatcher.subscribe(alice, 0, List.of(new HorseSubscribePayload.Subscription(clover, 20)));
+        assertEquals(List.of(entry(clover, OVERWORLD, new BlockPos(0, 64, 0))), collect(0).get(alice));
+
+        HorseSyncBatcher.queue(clover, OVERWORLD, new BlockPos(5, 64, 0));
+        assertTrue(collect(5).isEmpty());
+        assertTrue(collect(19).isEmpty());
+
+        // the horse moved on while the change was parked; the newest location goes out
+        place(clover, OVERWORLD, new BlockPos(9, 64, 0));
+        assertEquals(List.of(entry(clover, OVERWORLD, new BlockPos(9, 64, 0))), collect(20).get(alice));
+        assertTrue(collect(40).isEmpty());
+    }
+
+    @Test
+    void unsubscribedHorsesAreLeftOut() {
+        place(clover, OVERWORLD, new BlockPos(0, 64, 0));
+        place(dusty, OVERWORLD, new BlockPos(50, 64, 50));
+        WhistleHolderIndex.setSlot(alice, 0, clover);
+        WhistleHolderIndex.setSlot(alice, 1, dusty);
+        WhistleHolderIndex.setSlot(bob, 0, clover);
+        WhistleHolderIndex.setSlot(bob, 1, dusty);
+        HorseSyncBatcher.subscribe(alice, 0, List.of(new HorseSubscribePayload.Subscription(clover, 1)));
+
+        Map<UUID, List<HorseSyncBatchPayload.Entry>> batches = collect(0);
+        assertEquals(List.of(entry(clover, OVERWORLD, new BlockPos(0, 64, 0))), batches.get(alice));
+        // bob never declared anything and gets every horse a whistle of theirs is bound to
+        assertEquals(List.of(entry(clover, OVERWORLD, new BlockPos(0, 64, 0)), entry(dusty, OVERWORLD, new BlockPos(50, 64, 50))),
+                batches.get(bob));
+
+        HorseSyncBatcher.queue(dusty, OVERWORLD, new BlockPos(51, 64, 50));
+        batches = collect(1);
+        assertNull(batches.get(alice));
+        assertEquals(List.of(entry(dusty, OVERWORLD, new BlockPos(51, 64, 50))), batches.get(bob));
+        assertEquals(1, HorseSyncBatcher.subscriptionCount());
+    }
+
+    private void place(UUID horse, Identifier dimension, BlockPos pos) {
+        latest.put(horse, new BoundHorseData(horse, dimension, pos));
+    }
+
+    private Map<UUID, List<HorseSyncBatchPayload.Entry>> collect(long now) {
+        return HorseSyncBatcher.collect(now, latest::get);
+    }
+
+    private static HorseSyncBatchPayload.Entry entry(UUID horse, Identifier dimension, BlockPos pos) {
+        return new HorseSyncBatchPayload.Entry(horse, dimension, pos);
+    }
+}
@@ -0,0 +1,156 @@
+package com.proxi.whistle.world;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MappedSnapshotStoreTest
+ *
+ * Put/commit visibility, reopening, growing the index in place and reuse of free space.
+ * Stores are opened with a tiny index so a handful of horses already forces a grow.
+ */
+class MappedSnapshotStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void stagedBytesBecomeVisibleOnCommit() throws IOException {
+        MappedSnapshotStore store = MappedSnapshotStore.open(dir.resolve("snapshots.dat"));
+        UUID id = UUID.randomUUID();
+        store.put(id, bytes(1, 100));
+        assertNull(read(store, id));
+        store.commit();
+        assertArrayEquals(bytes(1, 100), read(store, id));
+
+        store.put(id, bytes(2, 300));
+        assertArrayEquals(bytes(1, 100), read(store, id));
+        store.commit();
+        assertArrayEquals(bytes(2, 300), read(store, id));
+
+        store.remove(id);
+        store.commit();
+        assertNull(read(store, id));
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    @Test
+    void reopenKeepsCommittedAndDropsStaged() throws IOException {
+        Path file = dir.resolve("snapshots.dat");
+        MappedSnapshotStore store = MappedSnapshotStore.open(file);
+        UUID kept = UUID.randomUUID();
+        UUID removed = UUID.randomUUID();
+        store.put(kept, bytes(1, 500));
+        store.put(removed, bytes(2, 500));
+        store.commit();
+        store.remove(removed);
+        store.close();
+
+        store = MappedSnapshotStore.open(file);
+        assertArrayEquals(bytes(1, 500), read(store, kept));
+        assertNull(read(store, removed));
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    void growKeepsEveryHorseReadable() throws IOException {
+        Path file = dir.resolve("snapshots.dat");
+        MappedSnapshotStore store = MappedSnapshotStore.open(file, 4);
+        Map<UUID, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            UUID id = UUID.randomUUID();
+            byte[] b = bytes(i, 1 + i * 13 % 3000);
+            store.put(id, b);
+            expected.put(id, b);
+            if (i % 7 == 0) store.commit();
+        }
+        store.commit();
+        assertEquals(expected.size(), store.size());
+        expected.forEach((id, b) -> assertArrayEquals(b, read(store, id)));
+        store.close();
+
+        MappedSnapshotStore reopened = MappedSnapshotStore.open(file);
+        assertEquals(expected.size(), reopened.size());
+        expected.forEach((id, b) -> assertArrayEquals(b, read(reopened, id)));
+        reopened.close();
+        assertFalse(Files.exists(file.resolveSibling("snapshots.dat.corrupt")));
+    }
+
+    @Test
+    void freedRangesMergeAndShrinkTheTail() throws IOException {
+        Path file = dir.resolve("snapshots.dat");
+        MappedSnapshotStore store = MappedSnapshotStore.open(file, 8);
+        Random random = new Random(7);
+        List<UUID> ids = new ArrayList<>();
+        Map<UUID, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 64; i++) ids.add(UUID.randomUUID());
+        for (int round = 0; round < 40; round++) {
+            for (int j = 0; j < 30; j++) {
+                UUID id = ids.get(random.nextInt(ids.size()));
+                if (random.nextInt(5) == 0) {
+                    store.remove(id);
+                    expected.remove(id);
+                } else {
+                    byte[] b = bytes(random.nextInt(), 1 + random.nextInt(5000));
+                    store.put(id, b);
+                    expected.put(id, b);
+                }
+            }
+            store.commit();
+        }
+        long free = store.freeBytes();
+        store.close();
+
+        // free space is derived from the index on open, so merging must agree with it
+        MappedSnapshotStore reopened = MappedSnapshotStore.open(file);
+        assertEquals(free, reopened.freeBytes());
+        expected.forEach((id, b) -> assertArrayEquals(b, read(reopened, id)));
+
+        for (UUID id : ids) reopened.remove(id);
+        reopened.commit();
+        assertEquals(0, reopened.size());
+        assertEquals(0, reopened.freeBytes());
+        reopened.close();
+    }
+
+    @Test
+    void unreadableFileIsMovedAside() throws IOException {
+        Path file = dir.resolve("snapshots.dat");
+        Files.write(file, new byte[8192]);
+        MappedSnapshotStore store = MappedSnapshotStore.open(file);
+        assertTrue(Files.exists(file.resolveSibling("snapshots.dat.corrupt")));
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    private static byte[] read(MappedSnapshotStore store, UUID id) {
+        return store.read(id, view -> {
+            byte[] out = new byte[view.remaining()];
+            view.get(out);
+            return out;
+        });
+    }
+
+    private static byte[] bytes(int seed, int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) b[i] = (byte) (seed * 31 + i);
+        return b;
+    }
+}
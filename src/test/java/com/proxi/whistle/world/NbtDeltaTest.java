@@ -0,0 +1,111 @@
+package com.proxi.whistle.world;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtInt;
+import net.minecraft.nbt.NbtList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * NbtDeltaTest
+ *
+ * diff/apply round trips, partial deltas for nested compounds, and the idempotence the
+ * journal replay relies on.
+ */
+class NbtDeltaTest {
+    @Test
+    void equalCompoundsHaveNoDelta() {
+        assertNull(NbtDelta.diff(horse(), horse()));
+        assertNull(NbtDelta.diff(new NbtCompound(), new NbtCompound()));
+    }
+
+    @Test
+    void roundTripsChangedAddedAndRemovedKeys() {
+        NbtCompound from = horse();
+        NbtCompound to = horse();
+        to.putFloat("Health", 12.5F);
+        to.remove("Tame");
+        to.putString("CustomName", "Clover");
+        NbtList pos = new NbtList();
+        pos.add(NbtInt.of(4));
+        pos.add(NbtInt.of(65));
+        to.put("Pos", pos);
+
+        NbtCompound delta = NbtDelta.diff(from, to);
+        assertNotNull(delta);
+        NbtCompound applied = from.copy();
+        NbtDelta.apply(applied, delta);
+        assertEquals(to, applied);
+    }
+
+    @Test
+    void nestedCompoundChangeIsPartial() {
+        NbtCompound from = horse();
+        NbtCompound to = horse();
+        to.getCompound("Attributes").putDouble("speed", 0.3375);
+
+        NbtCompound delta = NbtDelta.diff(from, to);
+        assertNotNull(delta);
+        assertTrue(delta.contains("c"));
+        assertTrue(delta.getCompound("c").contains("Attributes"));
+        NbtCompound applied = from.copy();
+        NbtDelta.apply(applied, delta);
+        assertEquals(to, applied);
+    }
+
+    @Test
+    void applyingTwiceIsHarmless() {
+        NbtCompound from = horse();
+        NbtCompound to = horse();
+        to.putInt("Age", 5);
+        to.remove("Tame");
+        to.getCompound("Attributes").putDouble("jump", 0.9);
+
+        NbtCompound delta = NbtDelta.diff(from, to);
+        NbtCompound applied = from.copy();
+        NbtDelta.apply(applied, delta);
+        NbtDelta.apply(applied, delta);
+        assertEquals(to, applied);
+    }
+
+    @Test
+    void replayingARunOnTheLatestStateKeepsIt() {
+        NbtCompound first = horse();
+        NbtCompound second = first.copy();
+        second.putFloat("Health", 10.0F);
+        second.getCompound("Attributes").putDouble("speed", 0.2);
+        NbtCompound third = second.copy();
+        third.remove("Health");
+        third.putInt("Age", 9);
+
+        NbtCompound d1 = NbtDelta.diff(first, second);
+        NbtCompound d2 = NbtDelta.diff(second, third);
+
+        // a compaction captured the newest state while both deltas were still in the log
+        NbtCompound replayed = third.copy();
+        NbtDelta.apply(replayed, d1);
+        NbtDelta.apply(replayed, d2);
+        assertEquals(third, replayed);
+    }
+
+    private static NbtCompound horse() {
+        NbtCompound horse = new NbtCompound();
+        horse.putString("id", "minecraft:horse");
+        horse.putFloat("Health", 30.0F);
+        horse.putInt("Age", 0);
+        horse.putBoolean("Tame", true);
+        horse.putInt("Variant", 513);
+        NbtCompound attributes = new NbtCompound();
+        attributes.putDouble("speed", 0.225);
+        attributes.putDouble("jump", 0.7);
+        attributes.putDouble("max_health", 30.0);
+        attributes.putString("armor", "minecraft:iron_horse_armor");
+        attributes.putInt("strength", 3);
+        horse.put("Attributes", attributes);
+        return horse;
+    }
+}
@@ -0,0 +1,114 @@
+package com.proxi.whistle.world;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RefreshSchedulerTest
+ *
+ * Per-tick quotas within a cycle, the wait for the next period, and catching up once a
+ * cycle is overdue because the budget ran out.
+ */
+class RefreshSchedulerTest {
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    @Test
+    void spreadsACycleEvenlyOverItsPeriod() {
+        RefreshScheduler scheduler = new RefreshScheduler(10, NO_LIMIT);
+        List<UUID> keys = ids(100);
+        List<UUID> seen = new ArrayList<>();
+        for (long tick = 0; tick < 10; tick++) {
+            scheduler.run(tick, () -> keys, seen::add);
+            assertEquals(10, scheduler.processedLastTick());
+        }
+        assertEquals(keys, seen);
+        assertEquals(10, scheduler.lastCycleTicks());
+        assertEquals(100, scheduler.lastCycleSize());
+        assertEquals(0, scheduler.behindTicks());
+    }
+
+    @Test
+    void quotaRoundsUpSoTheCycleEndsInTime() {
+        RefreshScheduler scheduler = new RefreshScheduler(10, NO_LIMIT);
+        List<UUID> keys = ids(25);
+        Set<UUID> seen = new HashSet<>();
+        for (long tick = 0; tick < 10; tick++) {
+            scheduler.run(tick, () -> keys, seen::add);
+            assertTrue(scheduler.processedLastTick() <= 3);
+        }
+        assertEquals(25, seen.size());
+        assertEquals(0, scheduler.behindTicks());
+    }
+
+    @Test
+    void nextCycleWaitsForThePeriod() {
+        RefreshScheduler scheduler = new RefreshScheduler(10, NO_LIMIT);
+        List<UUID> keys = ids(5);
+        int[] processed = new int[1];
+        for (long tick = 0; tick < 10; tick++) scheduler.run(tick, () -> keys, id -> processed[0]++);
+        assertEquals(5, processed[0]);
+        assertEquals(0, scheduler.processedLastTick());
+
+        scheduler.run(10, () -> keys, id -> processed[0]++);
+        assertEquals(1, scheduler.processedLastTick());
+        assertEquals(6, processed[0]);
+    }
+
+    @Test
+    void overdueCycleReportsHowFarBehind() {
+        // a one-nanosecond budget lets every tick do a single key
+        RefreshScheduler scheduler = new RefreshScheduler(2, 1L);
+        List<UUID> keys = ids(5);
+        Set<UUID> seen = new HashSet<>();
+        for (long tick = 0; tick < 5; tick++) {
+            scheduler.run(tick, () -> keys, id -> {
+                seen.add(id);
+                long start = System.nanoTime();
+                while (System.nanoTime() == start) Thread.onSpinWait();
+            });
+            assertEquals(1, scheduler.processedLastTick());
+        }
+        assertEquals(5, seen.size());
+        assertEquals(5, scheduler.lastCycleTicks());
+        assertEquals(3, scheduler.behindTicks());
+    }
+
+    @Test
+    void failingWorkDoesNotStopTheCycle() {
+        RefreshScheduler scheduler = new RefreshScheduler(1, NO_LIMIT);
+        List<UUID> keys = ids(4);
+        List<UUID> seen = new ArrayList<>();
+        scheduler.run(0, () -> keys, id -> {
+            seen.add(id);
+            if (id.equals(keys.get(1))) throw new IllegalStateException("boom");
+        });
+        assertEquals(keys, seen);
+        assertEquals(4, scheduler.processedLastTick());
+    }
+
+    @Test
+    void resetStartsAFreshCycle() {
+        RefreshScheduler scheduler = new RefreshScheduler(10, NO_LIMIT);
+        List<UUID> keys = ids(20);
+        scheduler.run(0, () -> keys, id -> {});
+        List<UUID> fewer = ids(3);
+        scheduler.reset();
+        scheduler.run(1, () -> fewer, id -> {});
+        assertEquals(3, scheduler.lastCycleSize());
+        assertEquals(1, scheduler.processedLastTick());
+    }
+
+    private static List<UUID> ids(int n) {
+        List<UUID> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) ids.add(new UUID(0L, i + 1));
+        return ids;
+    }
+}
@@ -0,0 +1,145 @@
+package com.proxi.whistle.world;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SnapshotJournalTest
+ *
+ * Replay order, recovery from a torn or corrupt tail, compaction into the base, and a base
+ * that can not be read.
+ */
+class SnapshotJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysDrainedRecordsInOrder() throws IOException {
+        Path base = dir.resolve("shard.dat");
+        SnapshotJournal journal = new SnapshotJournal(base);
+        for (int i = 0; i < 5; i++) journal.append(record(i));
+        assertTrue(journal.hasPending());
+        assertFalse(journal.isSettled());
+        journal.drain();
+        assertTrue(journal.isSettled());
+        assertFalse(journal.hasPending());
+
+        List<Integer> replayed = replay(new SnapshotJournal(base));
+        assertEquals(List.of(0, 1, 2, 3, 4), replayed);
+    }
+
+    @Test
+    void tornTailIsCutAndLaterAppendsStayReadable() throws IOException {
+        Path base = dir.resolve("shard.dat");
+        Path log = dir.resolve("shard.dat.log");
+        SnapshotJournal journal = new SnapshotJournal(base);
+        for (int i = 0; i < 3; i++) journal.append(record(i));
+        journal.drain();
+        long intact = Files.size(log);
+
+        // a crash mid-append: a frame header promising more bytes than were written
+        Files.write(log, new byte[] { 0, 0, 0, 100, 1, 2, 3, 4, 5, 6 }, StandardOpenOption.APPEND);
+
+        SnapshotJournal reopened = new SnapshotJournal(base);
+        assertEquals(List.of(0, 1, 2), replay(reopened));
+        assertEquals(intact, Files.size(log));
+        assertEquals(intact, reopened.logBytes());
+
+        reopened.append(record(3));
+        reopened.drain();
+        assertEquals(List.of(0, 1, 2, 3), replay(new SnapshotJournal(base)));
+    }
+
+    @Test
+    void corruptRecordEndsTheReplay() throws IOException {
+        Path base = dir.resolve("shard.dat");
+        Path log = dir.resolve("shard.dat.log");
+        SnapshotJournal journal = new SnapshotJournal(base);
+        journal.append(record(0));
+        journal.drain();
+        long first = journal.logBytes();
+        journal.append(record(1));
+        journal.append(record(2));
+        journal.drain();
+
+        // flip a byte in the body of the second record so its checksum fails
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[(int) first + 8] ^= 0x5A;
+        Files.write(log, bytes);
+
+        SnapshotJournal reopened = new SnapshotJournal(base);
+        assertEquals(List.of(0), replay(reopened));
+        assertEquals(first, Files.size(log));
+    }
+
+    @Test
+    void compactFoldsTheLogIntoTheBase() throws IOException {
+        Path base = dir.resolve("shard.dat");
+        SnapshotJournal journal = new SnapshotJournal(base);
+        journal.append(record(0));
+        journal.append(record(1));
+        NbtCompound state = new NbtCompound();
+        state.putInt("n", 42);
+        journal.compact(() -> state);
+        assertEquals(0L, journal.logBytes());
+
+        journal.append(record(2));
+        journal.drain();
+
+        SnapshotJournal reopened = new SnapshotJournal(base);
+        List<NbtCompound> bases = new ArrayList<>();
+        List<Integer> replayed = new ArrayList<>();
+        reopened.load(bases::add, rec -> replayed.add(rec.getInt("n")));
+        assertEquals(1, bases.size());
+        assertEquals(42, bases.get(0).getInt("n"));
+        assertEquals(List.of(2), replayed);
+    }
+
+    @Test
+    void unreadableBaseIsMovedAside() throws IOException {
+        Path base = dir.resolve("shard.dat");
+        Files.write(base, new byte[] { 1, 2, 3, 4 });
+        SnapshotJournal journal = new SnapshotJournal(base);
+        List<NbtCompound> bases = new ArrayList<>();
+        journal.load(bases::add, rec -> {});
+        assertTrue(bases.isEmpty());
+        assertFalse(Files.exists(base));
+        assertTrue(Files.exists(dir.resolve("shard.dat.corrupt")));
+
+        // the journal keeps working on a fresh base
+        NbtCompound state = new NbtCompound();
+        state.putInt("n", 7);
+        journal.compact(() -> state);
+        NbtCompound written = NbtIo.readCompressed(base, NbtSizeTracker.ofUnlimitedBytes());
+        assertNotNull(written);
+        assertEquals(7, written.getInt("n"));
+    }
+
+    private static NbtCompound record(int n) {
+        NbtCompound rec = new NbtCompound();
+        rec.putString("op", "put");
+        rec.putInt("n", n);
+        return rec;
+    }
+
+    private static List<Integer> replay(SnapshotJournal journal) throws IOException {
+        List<Integer> replayed = new ArrayList<>();
+        journal.load(null, rec -> replayed.add(rec.getInt("n")));
+        return replayed;
+    }
+}